@@ -0,0 +1,60 @@
+package com.pawanpoudel.powerauth.benchmarks;
+
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.metrics.MetricsRegistry;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * A PowerAuth instance that is not running inside a server: the managers only
+ * read its config, logger and data folder, and schedule tasks that never run.
+ */
+final class BenchmarkPlugin {
+
+    private BenchmarkPlugin() {
+    }
+
+    static PowerAuth create(File dataFolder, YamlConfiguration config) {
+        // stubOnly: a recording mock would collect every call made during the benchmark
+        BukkitScheduler scheduler = Mockito.mock(BukkitScheduler.class, Mockito.withSettings().stubOnly());
+        Server server = Mockito.mock(Server.class, Mockito.withSettings().stubOnly());
+        when(server.getScheduler()).thenReturn(scheduler);
+
+        PowerAuth plugin = Mockito.mock(PowerAuth.class, Mockito.withSettings().stubOnly());
+        when(plugin.getServer()).thenReturn(server);
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("PowerAuth"));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getMetrics()).thenReturn(new MetricsRegistry());
+        return plugin;
+    }
+
+    static Path createTempFolder() {
+        try {
+            return Files.createTempDirectory("powerauth-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void deleteFolder(Path folder) {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.pawanpoudel.powerauth.benchmarks;
+
+import com.pawanpoudel.powerauth.database.AccountSnapshot;
+import com.pawanpoudel.powerauth.database.DatabaseManager;
+import com.pawanpoudel.powerauth.database.QueryExecutor;
+import com.pawanpoudel.powerauth.database.SessionRecord;
+import com.pawanpoudel.powerauth.utils.PasswordUtils;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link DatabaseManager} query against a temporary SQLite file. The
+ * player cache and write-behind buffer are off so each call reaches the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    private static final int ACCOUNTS = 10000;
+
+    private Path dataFolder;
+    private DatabaseManager databaseManager;
+    private UUID[] accounts;
+    private String[] names;
+    private String passwordHash;
+
+    @Setup
+    public void setup() throws SQLException {
+        dataFolder = BenchmarkPlugin.createTempFolder();
+
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", "sqlite");
+        config.set("database.sqlite.file", "benchmark.db");
+        config.set("advanced.cache-player-data", false);
+        config.set("database.auto-save-interval", 0);
+        databaseManager = new DatabaseManager(BenchmarkPlugin.create(dataFolder.toFile(), config));
+
+        passwordHash = PasswordUtils.hash("password");
+        accounts = new UUID[ACCOUNTS];
+        names = new String[ACCOUNTS];
+        List<QueryExecutor.StatementBinder> players = new ArrayList<>(ACCOUNTS);
+        List<SessionRecord> sessions = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            UUID uuid = UUID.randomUUID();
+            String name = "Player" + i;
+            boolean premium = i % 4 == 0;
+            accounts[i] = uuid;
+            names[i] = name;
+            players.add(ps -> {
+                ps.setString(1, uuid.toString());
+                ps.setString(2, name);
+                ps.setString(3, passwordHash);
+                ps.setBoolean(4, premium);
+                ps.setString(5, "127.0.0.1");
+            });
+            sessions.add(new SessionRecord(uuid, "127.0.0.1", 0, SessionRecord.NEVER));
+        }
+        databaseManager.getQueryExecutor().batch(
+                "INSERT INTO players (uuid, username, password_hash, is_premium, last_ip) VALUES (?, ?, ?, ?, ?)",
+                players);
+        databaseManager.saveSessions(sessions);
+    }
+
+    @TearDown
+    public void tearDown() {
+        databaseManager.close();
+        BenchmarkPlugin.deleteFolder(dataFolder);
+    }
+
+    private UUID randomAccount() {
+        return accounts[ThreadLocalRandom.current().nextInt(accounts.length)];
+    }
+
+    private String randomIp() {
+        return "10.0.0." + ThreadLocalRandom.current().nextInt(256);
+    }
+
+    // Reads
+
+    @Benchmark
+    public AccountSnapshot loadAccount() {
+        return databaseManager.loadAccount(randomAccount());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public AccountSnapshot loadAccountParallel() {
+        return databaseManager.loadAccount(randomAccount());
+    }
+
+    @Benchmark
+    public AccountSnapshot loadMissingAccount() {
+        return databaseManager.loadAccount(UUID.randomUUID());
+    }
+
+    @Benchmark
+    public boolean isRegistered() {
+        return databaseManager.isRegistered(randomAccount());
+    }
+
+    @Benchmark
+    public String getPasswordHash() {
+        return databaseManager.getPasswordHash(randomAccount());
+    }
+
+    @Benchmark
+    public String getLastIp() {
+        return databaseManager.getLastIp(randomAccount());
+    }
+
+    @Benchmark
+    public boolean isPremium() {
+        return databaseManager.isPremium(randomAccount());
+    }
+
+    @Benchmark
+    public UUID findPremiumUUID() {
+        return databaseManager.findPremiumUUID(names[ThreadLocalRandom.current().nextInt(names.length)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public UUID findPremiumUUIDParallel() {
+        return databaseManager.findPremiumUUID(names[ThreadLocalRandom.current().nextInt(names.length)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public List<SessionRecord> loadSessions() {
+        return databaseManager.loadSessions(System.currentTimeMillis());
+    }
+
+    // Writes - these all go through the single SQLite writer thread
+
+    @Benchmark
+    public void updateIp() {
+        databaseManager.updateIp(randomAccount(), randomIp());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void updateIpParallel() {
+        databaseManager.updateIp(randomAccount(), randomIp());
+    }
+
+    @Benchmark
+    public void setPremium() {
+        databaseManager.setPremium(randomAccount(), ThreadLocalRandom.current().nextBoolean());
+    }
+
+    @Benchmark
+    public void changePassword() {
+        databaseManager.changePassword(randomAccount(), passwordHash);
+    }
+
+    @Benchmark
+    public void saveSession() {
+        databaseManager.saveSessions(Collections.singletonList(
+                new SessionRecord(randomAccount(), randomIp(), System.currentTimeMillis(), SessionRecord.NEVER)));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void saveSessionParallel() {
+        saveSession();
+    }
+
+    @Benchmark
+    public void registerAndUnregister() {
+        UUID uuid = UUID.randomUUID();
+        databaseManager.registerPlayer(uuid, uuid.toString().substring(0, 16), passwordHash, randomIp());
+        databaseManager.unregisterPlayer(uuid);
+    }
+}
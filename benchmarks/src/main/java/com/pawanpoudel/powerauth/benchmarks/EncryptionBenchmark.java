@@ -0,0 +1,80 @@
+package com.pawanpoudel.powerauth.benchmarks;
+
+import com.pawanpoudel.powerauth.utils.EncryptionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-login crypto of the premium handshake: decrypting what the client
+ * encrypted with our public key, and the server id hash sent to Mojang.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptionBenchmark {
+
+    private PublicKey publicKey;
+    private SecretKey sharedSecret;
+    private byte[] encryptedSecret;
+    private byte[] encryptedToken;
+
+    @Setup
+    public void setup() throws Exception {
+        publicKey = EncryptionUtil.getPublicKey();
+
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        sharedSecret = generator.generateKey();
+
+        // Encrypt the way the client does
+        Cipher cipher = Cipher.getInstance("RSA");
+        cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+        encryptedSecret = cipher.doFinal(sharedSecret.getEncoded());
+        encryptedToken = cipher.doFinal(EncryptionUtil.generateVerifyToken());
+    }
+
+    @Benchmark
+    public String serverIdHash() {
+        return EncryptionUtil.getServerIdHash("", publicKey, sharedSecret);
+    }
+
+    @Benchmark
+    public SecretKey decryptSharedSecret() {
+        return EncryptionUtil.decryptSharedSecret(publicKey, encryptedSecret);
+    }
+
+    @Benchmark
+    public byte[] decryptVerifyToken() {
+        return EncryptionUtil.decryptVerifyToken(publicKey, encryptedToken);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public SecretKey decryptSharedSecretParallel() {
+        return EncryptionUtil.decryptSharedSecret(publicKey, encryptedSecret);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] decryptVerifyTokenParallel() {
+        return EncryptionUtil.decryptVerifyToken(publicKey, encryptedToken);
+    }
+}
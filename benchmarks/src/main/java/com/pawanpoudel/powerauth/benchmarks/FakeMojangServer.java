@@ -0,0 +1,275 @@
+package com.pawanpoudel.powerauth.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * An in-process stand-in for the Mojang API and session server, for driving
+ * premium logins without the internet. It answers the three endpoints the
+ * plugin calls:
+ * <ul>
+ *     <li>GET /users/profiles/minecraft/&lt;name&gt; (single profile lookup)</li>
+ *     <li>POST /profile/lookup/bulk/byname (bulk profile lookup)</li>
+ *     <li>GET /session/minecraft/hasJoined (session verification)</li>
+ * </ul>
+ * Point the advanced.http.endpoints settings at {@link #getUrl()}. A name is
+ * premium when the predicate given to the constructor accepts it; its UUID is
+ * derived from the name. hasJoined only succeeds for a server id the client
+ * announced with {@link #join(String, String)}, like the real session server.
+ *
+ * <p>Latency, server errors and 429 responses can be changed while it runs, so
+ * a benchmark can switch into a brownout and back.</p>
+ */
+public class FakeMojangServer {
+
+    public static final String BULK_LOOKUP_PATH = "/profile/lookup/bulk/byname";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Predicate<String> premium;
+    // Lower-cased name -> server id of the client's last join
+    private final Map<String, String> joins = new ConcurrentHashMap<>();
+
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile double rateLimitRate;
+    private volatile int retryAfterSeconds = 1;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    public FakeMojangServer(Predicate<String> premium) throws IOException {
+        this.premium = premium;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // One virtual thread per request, so simulated latency never queues requests behind each other
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+
+        server.createContext("/users/profiles/minecraft/", exchange -> handle(exchange, this::profile));
+        server.createContext(BULK_LOOKUP_PATH, exchange -> handle(exchange, this::bulkLookup));
+        server.createContext("/session/minecraft/hasJoined", exchange -> handle(exchange, this::hasJoined));
+        server.start();
+    }
+
+    /**
+     * @return the base URL of every endpoint, e.g. http://127.0.0.1:41234
+     */
+    public String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * What the client does before answering the encryption request: tell the
+     * session server it joined the server with this id
+     */
+    public void join(String username, String serverId) {
+        joins.put(username.toLowerCase(Locale.ROOT), serverId);
+    }
+
+    public static UUID uuidOf(String username) {
+        return UUID.nameUUIDFromBytes(("premium:" + username.toLowerCase(Locale.ROOT))
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Delay before every answer, like a slow or distant Mojang
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Fraction of requests answered with HTTP 503
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Fraction of requests answered with HTTP 429 and a Retry-After header
+     */
+    public void setRateLimitRate(double rateLimitRate) {
+        this.rateLimitRate = rateLimitRate;
+    }
+
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        requests.increment();
+        try (exchange) {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < rateLimitRate) {
+                rateLimited.increment();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                send(exchange, 429, error("TooManyRequestsException", "The client has sent too many requests"));
+                return;
+            }
+            if (roll < rateLimitRate + errorRate) {
+                errors.increment();
+                send(exchange, 503, null);
+                return;
+            }
+
+            Response response = endpoint.answer(exchange);
+            send(exchange, response.status, response.body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Response profile(HttpExchange exchange) {
+        String name = exchange.getRequestURI().getPath().substring("/users/profiles/minecraft/".length());
+        if (!premium.test(name)) {
+            return new Response(204, null);
+        }
+        return new Response(200, profileJson(name));
+    }
+
+    private Response bulkLookup(HttpExchange exchange) {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            return new Response(405, null);
+        }
+
+        JsonElement names;
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            names = JsonParser.parseReader(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!names.isJsonArray() || names.getAsJsonArray().size() > 10) {
+            return new Response(400, error("IllegalArgumentException", "Expected between 1 and 10 names"));
+        }
+
+        // Mojang only lists the names that exist, in any order
+        JsonArray profiles = new JsonArray();
+        for (JsonElement name : names.getAsJsonArray()) {
+            if (premium.test(name.getAsString())) {
+                profiles.add(profileJson(name.getAsString()));
+            }
+        }
+        return new Response(200, profiles);
+    }
+
+    private Response hasJoined(HttpExchange exchange) {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String username = query.get("username");
+        String serverId = query.get("serverId");
+        if (username == null || serverId == null) {
+            return new Response(400, null);
+        }
+
+        String joined = joins.remove(username.toLowerCase(Locale.ROOT));
+        if (!premium.test(username) || !serverId.equals(joined)) {
+            return new Response(204, null);
+        }
+
+        JsonObject profile = profileJson(username);
+        profile.add("properties", new JsonArray());
+        return new Response(200, profile);
+    }
+
+    private static JsonObject profileJson(String name) {
+        JsonObject profile = new JsonObject();
+        profile.addProperty("id", uuidOf(name).toString().replace("-", ""));
+        profile.addProperty("name", name);
+        return profile;
+    }
+
+    private static JsonObject error(String error, String message) {
+        JsonObject json = new JsonObject();
+        json.addProperty("error", error);
+        json.addProperty("errorMessage", message);
+        return json;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query == null) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonElement body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        Response answer(HttpExchange exchange);
+    }
+
+    private static final class Response {
+        private final int status;
+        private final JsonElement body;
+
+        Response(int status, JsonElement body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.pawanpoudel.powerauth.benchmarks;
+
+import com.pawanpoudel.powerauth.utils.PasswordUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Legacy SHA-256 password hashing and the constant-time check used for hashes
+ * stored by older versions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasswordBenchmark {
+
+    private final String password = "correct horse battery staple";
+    private final String storedHash = PasswordUtils.hash(password);
+
+    @Benchmark
+    public String hash() {
+        return PasswordUtils.hash(password);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String hashParallel() {
+        return PasswordUtils.hash(password);
+    }
+
+    @Benchmark
+    public boolean checkMatch() {
+        return PasswordUtils.check(password, storedHash);
+    }
+
+    @Benchmark
+    public boolean checkMismatch() {
+        return PasswordUtils.check("wrong password", storedHash);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean checkMatchParallel() {
+        return PasswordUtils.check(password, storedHash);
+    }
+}
@@ -0,0 +1,280 @@
+package com.pawanpoudel.powerauth.benchmarks;
+
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.database.DatabaseManager;
+import com.pawanpoudel.powerauth.managers.HandshakeTable;
+import com.pawanpoudel.powerauth.managers.PremiumHandshake;
+import com.pawanpoudel.powerauth.managers.PremiumManager;
+import com.pawanpoudel.powerauth.tracing.LoginTracer;
+import com.pawanpoudel.powerauth.utils.EncryptionUtil;
+import com.pawanpoudel.powerauth.utils.HttpTransport;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Premium logins end to end against {@link FakeMojangServer}: the profile
+ * lookup through PremiumManager (database, then the bulk endpoint), the
+ * encryption handshake and the hasJoined check, run the way LoginListener runs
+ * them minus the packets. Each operation is a burst of concurrent logins, so
+ * the score is premium logins per second. The client's side of the handshake
+ * (AES key, RSA encryption, its own server id hash) is included.
+ *
+ * <p>The aux counters split the logins by how they ended. For a Mojang
+ * brownout, raise the latency, error and 429 rates, e.g.
+ * {@code -p latencyMillis=800 -p errorRate=0.3 -p rateLimitRate=0.2}.
+ * With {@code names=returning} the lookups are cached, as for regulars
+ * reconnecting after a restart, so only hasJoined is exposed to the brownout.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PremiumLoginBenchmark {
+
+    private static final int BURST = 100;
+    private static final int RETURNING_PLAYERS = 1000;
+
+    // Same limits LoginListener applies
+    private static final long CHECK_TIMEOUT_SECONDS = 3;
+    private static final long SESSION_TIMEOUT_SECONDS = 5;
+
+    @Param({"0", "50"})
+    public long latencyMillis;
+
+    @Param({"0"})
+    public double errorRate;
+
+    @Param({"0"})
+    public double rateLimitRate;
+
+    // fresh: every login is a name never seen before; returning: names from a pool whose lookups are cached
+    @Param({"fresh", "returning"})
+    public String names;
+
+    private Path dataFolder;
+    private FakeMojangServer mojang;
+    private HttpTransport transport;
+    private DatabaseManager databaseManager;
+    private PremiumManager premiumManager;
+    private HandshakeTable handshakes;
+    private LoginTracer tracer;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @Setup
+    public void setup() throws IOException {
+        dataFolder = BenchmarkPlugin.createTempFolder();
+        mojang = new FakeMojangServer(name -> name.startsWith("Premium"));
+
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", "sqlite");
+        config.set("database.sqlite.file", "benchmark.db");
+        config.set("database.auto-save-interval", 0);
+        config.set("authentication.premium.lookup-cache.size", RETURNING_PLAYERS * 2);
+        config.set("advanced.http.endpoints.mojang-api", mojang.getUrl());
+        config.set("advanced.http.endpoints.session-server", mojang.getUrl());
+        config.set("advanced.http.endpoints.profile-lookup", mojang.getUrl() + FakeMojangServer.BULK_LOOKUP_PATH);
+
+        PowerAuth plugin = BenchmarkPlugin.create(dataFolder.toFile(), config);
+        transport = new HttpTransport(5, 5);
+        when(plugin.getHttpTransport()).thenReturn(transport);
+        databaseManager = new DatabaseManager(plugin);
+        when(plugin.getDatabaseManager()).thenReturn(databaseManager);
+
+        tracer = new LoginTracer(plugin);
+        premiumManager = new PremiumManager(plugin);
+        handshakes = new HandshakeTable(TimeUnit.SECONDS.toMillis(30), BURST * 2);
+
+        // Fill the lookup cache while Mojang is still healthy
+        if (names.equals("returning")) {
+            CompletableFuture<?>[] lookups = new CompletableFuture<?>[RETURNING_PLAYERS];
+            for (int i = 0; i < RETURNING_PLAYERS; i++) {
+                lookups[i] = premiumManager.getPremiumUUID("Premium" + i);
+            }
+            CompletableFuture.allOf(lookups).join();
+        }
+
+        mojang.setLatencyMillis(latencyMillis);
+        mojang.setErrorRate(errorRate);
+        mojang.setRateLimitRate(rateLimitRate);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mojang.close();
+        transport.close();
+        databaseManager.close();
+        tracer.close();
+        BenchmarkPlugin.deleteFolder(dataFolder);
+    }
+
+    /**
+     * Premium logins per second, split by how they ended
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long loggedIn;
+        // hasJoined failed or timed out, or the handshake table was full
+        public long kicked;
+        // The lookup failed with nothing cached, so the premium player was let in as an offline one
+        public long offline;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            loggedIn = 0;
+            kicked = 0;
+            offline = 0;
+        }
+    }
+
+    private enum Outcome {
+        LOGGED_IN, KICKED, OFFLINE
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void premiumLogins(Outcomes outcomes) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Outcome>[] logins = new CompletableFuture[BURST];
+        for (int i = 0; i < BURST; i++) {
+            int connection = connections.incrementAndGet();
+            String name = "Premium" + (names.equals("returning") ? connection % RETURNING_PLAYERS : connection);
+            logins[i] = login(name, new InetSocketAddress(InetAddress.getLoopbackAddress(), connection & 0xFFFF));
+        }
+
+        for (CompletableFuture<Outcome> login : logins) {
+            switch (login.join()) {
+                case LOGGED_IN:
+                    outcomes.loggedIn++;
+                    break;
+                case KICKED:
+                    outcomes.kicked++;
+                    break;
+                case OFFLINE:
+                    outcomes.offline++;
+                    break;
+            }
+        }
+    }
+
+    private CompletableFuture<Outcome> login(String name, InetSocketAddress connection) {
+        PremiumHandshake handshake = new PremiumHandshake(name, tracer.start(null, name, "premium"));
+
+        return premiumManager.getPremiumUUID(name)
+                .completeOnTimeout(null, CHECK_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .thenCompose(premiumUUID -> {
+                    if (premiumUUID == null) {
+                        tracer.finish(handshake.getTrace(), "offline");
+                        return CompletableFuture.completedFuture(Outcome.OFFLINE);
+                    }
+                    if (!handshakes.register(connection, handshake)) {
+                        tracer.finish(handshake.getTrace(), "kicked");
+                        return CompletableFuture.completedFuture(Outcome.KICKED);
+                    }
+
+                    // Encryption request
+                    byte[] verifyToken = EncryptionUtil.generateVerifyToken();
+                    handshake.encryptionRequested(verifyToken);
+                    EncryptionResponse response = answer(name, EncryptionUtil.getPublicKey(), verifyToken);
+
+                    // Encryption response
+                    String serverId = handshake.transition(PremiumHandshake.State.ENCRYPTION_REQUEST_SENT,
+                            PremiumHandshake.State.VERIFYING) ? computeServerId(response, handshake) : null;
+                    if (serverId == null) {
+                        return CompletableFuture.completedFuture(kick(connection, handshake));
+                    }
+
+                    return premiumManager.verifySession(name, serverId)
+                            .completeOnTimeout(null, SESSION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .handle((uuid, error) -> {
+                                if (error != null || uuid == null || !handshake.transition(
+                                        PremiumHandshake.State.VERIFYING, PremiumHandshake.State.SUCCESS)) {
+                                    return kick(connection, handshake);
+                                }
+                                handshakes.complete(connection, handshake);
+                                tracer.finish(handshake.getTrace(), "logged in");
+                                return Outcome.LOGGED_IN;
+                            });
+                });
+    }
+
+    private Outcome kick(InetSocketAddress connection, PremiumHandshake handshake) {
+        handshakes.abandon(connection, handshake);
+        tracer.finish(handshake.getTrace(), "kicked");
+        return Outcome.KICKED;
+    }
+
+    /**
+     * The server's side, as LoginListener.computeServerId
+     */
+    private static String computeServerId(EncryptionResponse response, PremiumHandshake handshake) {
+        PublicKey publicKey = EncryptionUtil.getPublicKey();
+        SecretKey sharedSecret = EncryptionUtil.decryptSharedSecret(publicKey, response.sharedSecret);
+        byte[] verifyToken = EncryptionUtil.decryptVerifyToken(publicKey, response.verifyToken);
+        if (sharedSecret == null || !Arrays.equals(verifyToken, handshake.getVerifyToken())) {
+            return null;
+        }
+        return EncryptionUtil.getServerIdHash("", publicKey, sharedSecret);
+    }
+
+    /**
+     * The client's side: pick a shared secret, announce the join to the session
+     * server and encrypt the secret and token with the server's public key
+     */
+    private EncryptionResponse answer(String name, PublicKey publicKey, byte[] verifyToken) {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(128);
+            SecretKey sharedSecret = generator.generateKey();
+            mojang.join(name, EncryptionUtil.getServerIdHash("", publicKey, sharedSecret));
+
+            Cipher cipher = Cipher.getInstance("RSA");
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+            return new EncryptionResponse(cipher.doFinal(sharedSecret.getEncoded()), cipher.doFinal(verifyToken));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class EncryptionResponse {
+        private final byte[] sharedSecret;
+        private final byte[] verifyToken;
+
+        EncryptionResponse(byte[] sharedSecret, byte[] verifyToken) {
+            this.sharedSecret = sharedSecret;
+            this.verifyToken = verifyToken;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.pawanpoudel.powerauth.benchmarks;
+
+import com.pawanpoudel.powerauth.managers.SessionManager;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SessionManager#isLoggedIn(UUID)} is called for nearly every event and
+ * packet of every player, from the main thread and the network threads at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+
+    @Param({"100", "1000"})
+    private int onlinePlayers;
+
+    private SessionManager sessionManager;
+    private UUID[] players;
+
+    @Setup
+    public void setup() {
+        YamlConfiguration config = new YamlConfiguration();
+        // Nothing to load: the benchmark only exercises the in-memory login state
+        config.set("authentication.offline.force-login-after-restart", true);
+        sessionManager = new SessionManager(BenchmarkPlugin.create(new File("."), config));
+
+        // Half of the players are logged in, the other half still in limbo
+        players = new UUID[onlinePlayers];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+            if (i % 2 == 0) {
+                sessionManager.login(players[i]);
+            }
+        }
+    }
+
+    private UUID randomPlayer() {
+        return players[ThreadLocalRandom.current().nextInt(players.length)];
+    }
+
+    @Benchmark
+    public boolean isLoggedIn() {
+        return sessionManager.isLoggedIn(randomPlayer());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean isLoggedInParallel() {
+        return sessionManager.isLoggedIn(randomPlayer());
+    }
+
+    // Readers racing a thread that keeps logging players in and out
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(7)
+    public boolean contendedRead() {
+        return sessionManager.isLoggedIn(randomPlayer());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedWrite() {
+        UUID uuid = randomPlayer();
+        if (sessionManager.isLoggedIn(uuid)) {
+            sessionManager.logout(uuid);
+        } else {
+            sessionManager.login(uuid);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.pawanpoudel.powerauth.loadtest;
+
+import com.google.gson.GsonBuilder;
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.metrics.Counter;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Headless login storm: PowerAuth runs on a MockBukkit server with a temporary
+ * SQLite database while simulated clients join, register, quit, come back from
+ * a new address and /login (some with a wrong password first), then rejoin on
+ * their saved session. Every phase reports the main thread's time and
+ * allocation per tick, the JVM-wide allocation rate and SQL statements per join.
+ *
+ * <pre>
+ * mvn -B -Ploadtest test -Dloadtest.players=1000 -Dloadtest.joins-per-tick=50
+ * </pre>
+ *
+ * The report is printed and written to target/loadtest/login-storm.json, so runs
+ * of two releases can be compared. MockBukkit does no networking or chunk
+ * loading, so the numbers cover the plugin's own work only.
+ */
+class LoginStormLoadTest {
+
+    private static final int PLAYERS = Integer.getInteger("loadtest.players", 200);
+    private static final int JOINS_PER_TICK = Integer.getInteger("loadtest.joins-per-tick", 20);
+    private static final double WRONG_PASSWORD_RATIO =
+            Double.parseDouble(System.getProperty("loadtest.wrong-password-ratio", "0.2"));
+    // The server's tick length; async work (hashing, database) keeps running while the main thread sleeps
+    private static final long TICK_MILLIS = Long.getLong("loadtest.tick-millis", 50);
+    private static final int MAX_TICKS = Integer.getInteger("loadtest.max-ticks", 6000);
+    private static final String ALGORITHM = System.getProperty("loadtest.algorithm", "argon2id");
+    // off, world or virtual; MockBukkit implements little of what the limbo world needs
+    private static final String LIMBO = System.getProperty("loadtest.limbo", "off");
+    private static final Path REPORT = Path.of(System.getProperty("loadtest.report",
+            "target/loadtest/login-storm.json"));
+
+    private static final String PASSWORD = "storm-password";
+
+    private ServerMock server;
+    private PowerAuth plugin;
+    private Counter statements;
+    private final List<Map<String, Object>> phases = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException, InvalidDescriptionException {
+        server = MockBukkit.mock();
+
+        PluginDescriptionFile description;
+        try (InputStream in = PowerAuth.class.getClassLoader().getResourceAsStream("plugin.yml")) {
+            description = new PluginDescriptionFile(in);
+        }
+        // Loaded and enabled separately, so the config can be changed before onEnable reads it
+        plugin = (PowerAuth) server.getPluginManager().loadPlugin(PowerAuth.class, description, new Object[0]);
+        configure(plugin.getConfig());
+        server.getPluginManager().enablePlugin(plugin);
+
+        statements = plugin.getMetrics().counter("powerauth_database_statements_total",
+                "SQL statements sent to the database");
+    }
+
+    private static void configure(FileConfiguration config) {
+        config.set("database.type", "sqlite");
+        config.set("authentication.premium.enabled", false);
+        config.set("security.password.algorithm", ALGORITHM);
+        // Minimum costs: calibrating would make runs on different machines incomparable
+        config.set("security.password.target-millis", 0);
+        config.set("security.password.queue-size", Math.max(64, PLAYERS * 2));
+        config.set("limbo.enabled", !LIMBO.equals("off"));
+        config.set("limbo.mode", LIMBO.equals("virtual") ? "virtual" : "world");
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Test
+    void loginStorm() throws IOException {
+        List<StormPlayer> firstVisit = connect(1);
+        List<StormPlayer> secondVisit = connect(2);
+        List<StormPlayer> thirdVisit = connect(2);
+        Random random = new Random(42);
+        boolean[] wrongPassword = new boolean[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            wrongPassword[i] = random.nextDouble() < WRONG_PASSWORD_RATIO;
+        }
+
+        // New players: join, then /register on the next tick
+        runPhase("register", PLAYERS, tick -> {
+            join(firstVisit, tick);
+            forEachJoinedAt(firstVisit, tick - 1,
+                    (i, player) -> player.performCommand("register " + PASSWORD + " " + PASSWORD));
+            return allLoggedIn(firstVisit);
+        });
+
+        runPhase("quit", 0, tick -> quit(firstVisit, tick));
+
+        // Back from a new address, so the IP no longer logs them in
+        runPhase("login", PLAYERS, tick -> {
+            join(secondVisit, tick);
+            forEachJoinedAt(secondVisit, tick - 1, (i, player) ->
+                    player.performCommand("login " + (wrongPassword[i] ? "wrong-" : "") + PASSWORD));
+            // Resent every few ticks until it goes through: it is refused while the wrong one is still being checked
+            if (tick % 5 == 0) {
+                for (int i = 0; i < Math.min(PLAYERS, (tick - 2) * JOINS_PER_TICK); i++) {
+                    StormPlayer player = secondVisit.get(i);
+                    if (wrongPassword[i] && !plugin.getSessionManager().isLoggedIn(player.getUniqueId())) {
+                        player.performCommand("login " + PASSWORD);
+                    }
+                }
+            }
+            return allLoggedIn(secondVisit);
+        });
+
+        runPhase("quit", 0, tick -> quit(secondVisit, tick));
+
+        // Same address as the last login: the saved session lets them straight in
+        runPhase("session-resume", PLAYERS, tick -> {
+            join(thirdVisit, tick);
+            return allLoggedIn(thirdVisit);
+        });
+
+        runPhase("quit", 0, tick -> quit(thirdVisit, tick));
+
+        writeReport();
+    }
+
+    /**
+     * Run ticks until the action reports the phase is done. Each tick is the
+     * action on the main thread followed by the scheduler's tasks (the
+     * callbacks of completed logins), then a sleep for the rest of the tick.
+     */
+    private void runPhase(String name, int joins, IntFunction<Boolean> action) {
+        TickProfiler profiler = new TickProfiler(name);
+        long statementsBefore = statements.get();
+
+        for (int tick = 0; ; tick++) {
+            assertTrue(tick < MAX_TICKS, name + " did not finish within " + MAX_TICKS + " ticks");
+
+            long start = System.nanoTime();
+            profiler.begin();
+            boolean done = action.apply(tick);
+            server.getScheduler().performOneTick();
+            profiler.end();
+            if (done) {
+                break;
+            }
+
+            long remaining = TICK_MILLIS * 1_000_000L - (System.nanoTime() - start);
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+
+        phases.add(profiler.report(joins, statements.get() - statementsBefore));
+    }
+
+    /**
+     * One connection per player; visits with the same number share an address
+     */
+    private List<StormPlayer> connect(int visit) {
+        List<StormPlayer> players = new ArrayList<>(PLAYERS);
+        for (int i = 0; i < PLAYERS; i++) {
+            UUID uuid = UUID.nameUUIDFromBytes(("Storm" + i).getBytes(StandardCharsets.UTF_8));
+            String ip = "10." + visit + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF);
+            players.add(new StormPlayer(server, "Storm" + i, uuid, ip));
+        }
+        return players;
+    }
+
+    private void join(List<StormPlayer> players, int tick) {
+        forEachJoinedAt(players, tick, (i, player) -> server.addPlayer(player));
+    }
+
+    /**
+     * @return true once every player has left
+     */
+    private boolean quit(List<StormPlayer> players, int tick) {
+        forEachJoinedAt(players, tick, (i, player) -> player.disconnect());
+        return server.getOnlinePlayers().isEmpty();
+    }
+
+    private void forEachJoinedAt(List<StormPlayer> players, int tick, PlayerAction action) {
+        if (tick < 0) {
+            return;
+        }
+        int from = tick * JOINS_PER_TICK;
+        int to = Math.min(players.size(), from + JOINS_PER_TICK);
+        for (int i = from; i < to; i++) {
+            action.run(i, players.get(i));
+        }
+    }
+
+    private boolean allLoggedIn(List<StormPlayer> players) {
+        for (StormPlayer player : players) {
+            if (!plugin.getSessionManager().isLoggedIn(player.getUniqueId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeReport() throws IOException {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("players", PLAYERS);
+        settings.put("joinsPerTick", JOINS_PER_TICK);
+        settings.put("wrongPasswordRatio", WRONG_PASSWORD_RATIO);
+        settings.put("tickMillis", TICK_MILLIS);
+        settings.put("algorithm", ALGORITHM);
+        settings.put("limbo", LIMBO);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", settings);
+        report.put("phases", phases);
+
+        System.out.printf("%n%-15s %6s %9s %9s %9s %9s %10s %11s %9s%n", "phase", "ticks", "ms/tick",
+                "p99 ms", "max ms", "cpu ms", "KiB/tick", "alloc MiB/s", "sql/join");
+        for (Map<String, Object> phase : phases) {
+            System.out.printf("%-15s %6s %9s %9s %9s %9s %10s %11s %9s%n", phase.get("phase"), phase.get("ticks"),
+                    phase.get("mainThreadMillisPerTick"), phase.get("mainThreadMillisP99"),
+                    phase.get("mainThreadMillisMax"), phase.get("mainThreadCpuMillisPerTick"),
+                    phase.get("mainThreadKibPerTick"), phase.get("allocationMibPerSecond"),
+                    phase.get("statementsPerJoin"));
+        }
+
+        Files.createDirectories(REPORT.toAbsolutePath().getParent());
+        Files.writeString(REPORT, new GsonBuilder().setPrettyPrinting().create().toJson(report));
+        System.out.println("Report written to " + REPORT.toAbsolutePath());
+    }
+
+    @FunctionalInterface
+    private interface PlayerAction {
+        void run(int index, StormPlayer player);
+    }
+}
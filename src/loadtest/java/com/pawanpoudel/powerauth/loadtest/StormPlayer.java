@@ -0,0 +1,26 @@
+package com.pawanpoudel.powerauth.loadtest;
+
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.net.InetSocketAddress;
+import java.util.UUID;
+
+/**
+ * A simulated client. The address is fixed per connection, so a rejoin from a
+ * new address has to /login instead of being let in by IP.
+ */
+final class StormPlayer extends PlayerMock {
+
+    private final InetSocketAddress address;
+
+    StormPlayer(ServerMock server, String name, UUID uuid, String ip) {
+        super(server, name, uuid);
+        this.address = new InetSocketAddress(ip, 25565);
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,99 @@
+package com.pawanpoudel.powerauth.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures the main thread over simulated ticks: wall time, CPU time and bytes
+ * allocated by the main thread between {@link #begin()} and {@link #end()}, plus
+ * the allocation of the whole JVM over the phase.
+ */
+final class TickProfiler {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final String phase;
+    private final long phaseStart = System.nanoTime();
+    private final long totalAllocatedAtStart = THREADS.getTotalThreadAllocatedBytes();
+
+    private long[] wallNanos = new long[64];
+    private long cpuNanos;
+    private long allocatedBytes;
+    private int ticks;
+
+    private long tickWall;
+    private long tickCpu;
+    private long tickAllocated;
+
+    TickProfiler(String phase) {
+        this.phase = phase;
+    }
+
+    void begin() {
+        tickWall = System.nanoTime();
+        tickCpu = THREADS.getCurrentThreadCpuTime();
+        tickAllocated = THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    void end() {
+        long wall = System.nanoTime() - tickWall;
+        cpuNanos += THREADS.getCurrentThreadCpuTime() - tickCpu;
+        allocatedBytes += THREADS.getCurrentThreadAllocatedBytes() - tickAllocated;
+        if (ticks == wallNanos.length) {
+            wallNanos = Arrays.copyOf(wallNanos, ticks * 2);
+        }
+        wallNanos[ticks++] = wall;
+    }
+
+    /**
+     * @param joins players who joined during the phase, to spread the database statements over
+     * @param statements SQL statements the plugin ran during the phase
+     */
+    Map<String, Object> report(int joins, long statements) {
+        double seconds = (System.nanoTime() - phaseStart) / 1e9;
+        long allAllocated = THREADS.getTotalThreadAllocatedBytes() - totalAllocatedAtStart;
+        long[] sorted = Arrays.copyOf(wallNanos, ticks);
+        Arrays.sort(sorted);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("phase", phase);
+        report.put("ticks", ticks);
+        report.put("seconds", round(seconds));
+        report.put("mainThreadMillisPerTick", round(millis(sum(sorted)) / Math.max(1, ticks)));
+        report.put("mainThreadMillisP50", round(millis(quantile(sorted, 0.5))));
+        report.put("mainThreadMillisP99", round(millis(quantile(sorted, 0.99))));
+        report.put("mainThreadMillisMax", round(millis(ticks > 0 ? sorted[ticks - 1] : 0)));
+        report.put("mainThreadCpuMillisPerTick", round(millis(cpuNanos) / Math.max(1, ticks)));
+        report.put("mainThreadKibPerTick", round(allocatedBytes / 1024.0 / Math.max(1, ticks)));
+        report.put("allocationMibPerSecond", round(allAllocated / 1024.0 / 1024.0 / Math.max(seconds, 1e-9)));
+        report.put("joins", joins);
+        report.put("statementsPerJoin", joins > 0 ? round((double) statements / joins) : 0);
+        return report;
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    private static long quantile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
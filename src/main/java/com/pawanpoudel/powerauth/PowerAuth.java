@@ -1,17 +1,46 @@
 package com.pawanpoudel.powerauth;
 
 import com.pawanpoudel.powerauth.database.DatabaseManager;
+import com.pawanpoudel.powerauth.managers.LoginTimeoutManager;
 import com.pawanpoudel.powerauth.managers.SessionManager;
+import com.pawanpoudel.powerauth.metrics.MetricsRegistry;
+import com.pawanpoudel.powerauth.metrics.PrometheusFileWriter;
+import com.pawanpoudel.powerauth.security.LoginThrottle;
+import com.pawanpoudel.powerauth.security.PasswordService;
+import com.pawanpoudel.powerauth.tracing.LoginTracer;
+import com.pawanpoudel.powerauth.utils.HttpTransport;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 public class PowerAuth extends JavaPlugin {
 
     private static PowerAuth instance;
 
     private DatabaseManager databaseManager;
     private SessionManager sessionManager;
+    private com.pawanpoudel.powerauth.managers.AccountManager accountManager;
     private com.pawanpoudel.powerauth.managers.LimboManager limboManager;
     private com.pawanpoudel.powerauth.managers.AdminSecurityManager adminSecurityManager;
+    private LoginTimeoutManager loginTimeoutManager;
+    private com.pawanpoudel.powerauth.listeners.LimboTrafficGate limboTrafficGate;
+    private com.pawanpoudel.powerauth.listeners.LoginListener loginListener;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private HttpTransport httpTransport;
+    private PasswordService passwordService;
+    private LoginThrottle loginThrottle;
+    private LoginTracer loginTracer;
+
+    // Hands database results back to the server thread for Bukkit-side effects
+    private final Executor mainThreadExecutor = task -> {
+        if (getServer().isPrimaryThread()) {
+            task.run();
+        } else {
+            getServer().getScheduler().runTask(this, task);
+        }
+    };
 
     @Override
     public void onEnable() {
@@ -23,9 +52,28 @@ public class PowerAuth extends JavaPlugin {
         // Save default config
         saveDefaultConfig();
 
+        // Per-login flight recorder events, plus a recording dumped on slow logins
+        this.loginTracer = new LoginTracer(this);
+
+        // Shared HTTP client for Mojang and webhook requests
+        this.httpTransport = new HttpTransport(
+                getConfig().getLong("advanced.http.connect-timeout", 5),
+                getConfig().getLong("advanced.http.request-timeout", 5));
+
+        // Password hashing pool, tuned to this machine in the background
+        this.passwordService = new PasswordService(this);
+        this.passwordService.calibrate();
+        this.loginThrottle = new LoginThrottle(
+                getConfig().getInt("security.throttle.table-size", 8192),
+                TimeUnit.SECONDS.toMillis(getConfig().getLong("security.ban-duration", 300)),
+                getConfig().getInt("security.max-login-attempts", 3),
+                getConfig().getInt("security.throttle.max-attempts-per-ip", 10));
+
         // Initialize Database
         this.databaseManager = new DatabaseManager(this);
-        this.sessionManager = new SessionManager();
+        this.accountManager = new com.pawanpoudel.powerauth.managers.AccountManager(this);
+        this.sessionManager = new SessionManager(this);
+        this.loginTimeoutManager = new LoginTimeoutManager(this, sessionManager);
         this.limboManager = new com.pawanpoudel.powerauth.managers.LimboManager(this);
         this.adminSecurityManager = new com.pawanpoudel.powerauth.managers.AdminSecurityManager(this);
 
@@ -38,17 +86,143 @@ public class PowerAuth extends JavaPlugin {
         getServer().getPluginManager()
                 .registerEvents(new com.pawanpoudel.powerauth.listeners.AuthListener(this, sessionManager), this);
 
+        // Premium login and the packet filters all hook into the protocol through ProtocolLib
+        boolean protocolLib = getServer().getPluginManager().getPlugin("ProtocolLib") != null;
+        if (!protocolLib) {
+            getLogger().warning("ProtocolLib not found, premium auto-login and the packet filters are disabled.");
+        }
+
+        // Drop gameplay packets from unauthenticated players before they become events
+        if (protocolLib && getConfig().getBoolean("advanced.packet-filter", true)) {
+            new com.pawanpoudel.powerauth.listeners.PreAuthPacketFilter(this, sessionManager).register();
+        }
+
+        // Keep chat, entity movement and other limbo players off unauthenticated connections
+        if (protocolLib && getConfig().getBoolean("advanced.outbound-filter", true)) {
+            this.limboTrafficGate = new com.pawanpoudel.powerauth.listeners.LimboTrafficGate(this, sessionManager);
+            limboTrafficGate.register();
+        }
+
         // Register Premium Authentication Listener
-        new com.pawanpoudel.powerauth.listeners.LoginListener(this);
+        if (protocolLib) {
+            this.loginListener = new com.pawanpoudel.powerauth.listeners.LoginListener(this);
+        }
+
+        registerGauges();
+        startPrometheusFile();
+    }
+
+    /**
+     * Expose the state other components already track through the metrics registry
+     */
+    private void registerGauges() {
+        metrics.gauge("powerauth_players_logged_in", "Players currently logged in", sessionManager::getLoggedInCount);
+        metrics.gauge("powerauth_login_timeouts_pending", "Players waiting to log in before they are kicked",
+                loginTimeoutManager::getPending);
+
+        metrics.gauge("powerauth_database_connections_active", "Database connections in use",
+                () -> databaseManager.getPoolStats() != null ? databaseManager.getPoolStats().getActive() : 0);
+        metrics.gauge("powerauth_database_connections_waiting", "Threads waiting for a database connection",
+                () -> databaseManager.getPoolStats() != null ? databaseManager.getPoolStats().getWaiting() : 0);
+        if (databaseManager.getPlayerCache() != null) {
+            metrics.gauge("powerauth_player_cache_hits", "Player cache hits",
+                    () -> databaseManager.getPlayerCache().getHits());
+            metrics.gauge("powerauth_player_cache_misses", "Player cache misses",
+                    () -> databaseManager.getPlayerCache().getMisses());
+            metrics.gauge("powerauth_player_cache_size", "Players in the cache",
+                    () -> databaseManager.getPlayerCache().size());
+        }
+
+        if (loginListener != null) {
+            com.pawanpoudel.powerauth.managers.HandshakeTable handshakes = loginListener.getHandshakeTable();
+            metrics.gauge("powerauth_handshakes_pending", "Premium handshakes waiting for the client",
+                    handshakes::size);
+            metrics.gauge("powerauth_handshakes_completed", "Premium handshakes completed",
+                    handshakes::getCompleted);
+            metrics.gauge("powerauth_handshakes_abandoned", "Premium handshakes that failed",
+                    handshakes::getAbandoned);
+            metrics.gauge("powerauth_handshakes_expired", "Premium handshakes the client never finished",
+                    handshakes::getExpired);
+            metrics.gauge("powerauth_handshakes_rejected", "Premium handshakes refused because the table was full",
+                    handshakes::getRejected);
+        }
+
+        if (limboTrafficGate != null) {
+            metrics.gauge("powerauth_outbound_packets_saved", "Packets not sent to players in limbo",
+                    limboTrafficGate::getPacketsSaved);
+            metrics.gauge("powerauth_outbound_bytes_saved", "Estimated bytes not sent to players in limbo",
+                    limboTrafficGate::getBytesSaved);
+            metrics.gauge("powerauth_join_quit_messages_saved", "Join and quit messages not sent to players in limbo",
+                    limboTrafficGate::getMessagesSaved);
+            metrics.gauge("powerauth_visibility_changes_pending", "Limbo visibility changes waiting to be applied",
+                    limboTrafficGate::getPendingVisibilityChanges);
+        }
+
+        com.pawanpoudel.powerauth.utils.DiscordWebhook webhook = adminSecurityManager.getWebhook();
+        if (webhook != null) {
+            metrics.gauge("powerauth_webhook_sent", "Discord alerts delivered", webhook::getSent);
+            metrics.gauge("powerauth_webhook_dropped", "Discord alerts dropped because the queue was full",
+                    webhook::getDropped);
+            metrics.gauge("powerauth_webhook_queued", "Discord alerts waiting to be sent", webhook::getQueued);
+        }
+    }
+
+    private void startPrometheusFile() {
+        if (!getConfig().getBoolean("metrics.prometheus-file.enabled", false)) {
+            return;
+        }
+
+        java.io.File file = new java.io.File(getConfig().getString("metrics.prometheus-file.path", "metrics.prom"));
+        if (!file.isAbsolute()) {
+            file = new java.io.File(getDataFolder(), file.getPath());
+        }
+        PrometheusFileWriter writer = new PrometheusFileWriter(metrics, file.toPath());
+        long interval = Math.max(1, getConfig().getLong("metrics.prometheus-file.interval", 15)) * 20L;
+
+        getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
+            try {
+                writer.write();
+            } catch (IOException e) {
+                getLogger().warning("Could not write metrics file: " + e.getMessage());
+            }
+        }, interval, interval);
     }
 
     @Override
     public void onDisable() {
         getLogger().info("PowerAuth has been disabled!");
 
+        if (loginTimeoutManager != null) {
+            loginTimeoutManager.close();
+        }
+
+        if (limboTrafficGate != null) {
+            limboTrafficGate.close();
+        }
+
+        if (sessionManager != null && databaseManager != null) {
+            sessionManager.close();
+        }
+
         if (databaseManager != null) {
             databaseManager.close();
         }
+
+        if (passwordService != null) {
+            passwordService.close();
+        }
+
+        if (adminSecurityManager != null) {
+            adminSecurityManager.close();
+        }
+
+        if (httpTransport != null) {
+            httpTransport.close();
+        }
+
+        if (loginTracer != null) {
+            loginTracer.close();
+        }
     }
 
     private void displayBanner() {
@@ -89,10 +263,38 @@ public class PowerAuth extends JavaPlugin {
         return instance;
     }
 
+    public Executor getMainThreadExecutor() {
+        return mainThreadExecutor;
+    }
+
+    public LoginTracer getLoginTracer() {
+        return loginTracer;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public HttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    public PasswordService getPasswordService() {
+        return passwordService;
+    }
+
+    public LoginThrottle getLoginThrottle() {
+        return loginThrottle;
+    }
+
     public DatabaseManager getDatabaseManager() {
         return databaseManager;
     }
 
+    public com.pawanpoudel.powerauth.managers.AccountManager getAccountManager() {
+        return accountManager;
+    }
+
     public SessionManager getSessionManager() {
         return sessionManager;
     }
@@ -101,6 +303,14 @@ public class PowerAuth extends JavaPlugin {
         return limboManager;
     }
 
+    public LoginTimeoutManager getLoginTimeoutManager() {
+        return loginTimeoutManager;
+    }
+
+    public com.pawanpoudel.powerauth.listeners.LimboTrafficGate getLimboTrafficGate() {
+        return limboTrafficGate;
+    }
+
     public com.pawanpoudel.powerauth.managers.AdminSecurityManager getAdminSecurityManager() {
         return adminSecurityManager;
     }
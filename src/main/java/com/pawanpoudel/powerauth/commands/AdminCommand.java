@@ -1,7 +1,12 @@
 package com.pawanpoudel.powerauth.commands;
 
 import com.pawanpoudel.powerauth.PowerAuth;
-import com.pawanpoudel.powerauth.utils.PasswordUtils;
+import com.pawanpoudel.powerauth.database.DatabaseManager;
+import com.pawanpoudel.powerauth.database.PoolStats;
+import com.pawanpoudel.powerauth.metrics.Counter;
+import com.pawanpoudel.powerauth.metrics.Gauge;
+import com.pawanpoudel.powerauth.metrics.Histogram;
+import com.pawanpoudel.powerauth.metrics.MetricsRegistry;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
@@ -9,7 +14,10 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 public class AdminCommand implements CommandExecutor {
 
@@ -41,6 +49,8 @@ public class AdminCommand implements CommandExecutor {
                 return handleInfo(sender, args);
             case "reload":
                 return handleReload(sender);
+            case "stats":
+                return handleStats(sender);
             default:
                 sendHelp(sender);
                 return true;
@@ -66,27 +76,32 @@ public class AdminCommand implements CommandExecutor {
 
         UUID uuid = target.getUniqueId();
 
-        // Check if player is registered
-        if (!plugin.getDatabaseManager().isRegistered(uuid)) {
-            sender.sendMessage(ChatColor.RED + "Player is not registered!");
-            return true;
-        }
+        plugin.getAccountManager().getAccount(uuid).thenAcceptAsync(account -> {
+            if (account == null) {
+                sender.sendMessage(ChatColor.RED + "Player is not registered!");
+                return;
+            }
 
-        // Check if player is premium
-        if (plugin.getDatabaseManager().isPremium(uuid)) {
-            sender.sendMessage(ChatColor.RED + "Cannot force login premium players!");
-            return true;
-        }
+            if (account.isPremium()) {
+                sender.sendMessage(ChatColor.RED + "Cannot force login premium players!");
+                return;
+            }
 
-        // Force login
-        plugin.getSessionManager().login(uuid);
-        plugin.getLimboManager().sendToMainWorld(target);
+            if (!target.isOnline()) {
+                sender.sendMessage(ChatColor.RED + "Player is not online anymore!");
+                return;
+            }
 
-        target.sendMessage(ChatColor.GREEN + "You have been logged in by an administrator.");
-        sender.sendMessage(ChatColor.GREEN + "Successfully force-logged in " + target.getName());
+            // Force login
+            plugin.getSessionManager().login(uuid);
+            plugin.getLimboManager().sendToMainWorld(target);
 
-        // Audit log
-        plugin.getLogger().info("[ADMIN] " + sender.getName() + " force-logged in " + target.getName());
+            target.sendMessage(ChatColor.GREEN + "You have been logged in by an administrator.");
+            sender.sendMessage(ChatColor.GREEN + "Successfully force-logged in " + target.getName());
+
+            // Audit log
+            plugin.getLogger().info("[ADMIN] " + sender.getName() + " force-logged in " + target.getName());
+        }, plugin.getMainThreadExecutor()).exceptionally(e -> reportError(sender, "force-login", e));
 
         return true;
     }
@@ -124,30 +139,45 @@ public class AdminCommand implements CommandExecutor {
         UUID uuid = onlinePlayer != null ? onlinePlayer.getUniqueId()
                 : Bukkit.getOfflinePlayer(playerName).getUniqueId();
 
-        // Check if player is registered
-        if (!plugin.getDatabaseManager().isRegistered(uuid)) {
-            sender.sendMessage(ChatColor.RED + "Player is not registered!");
-            return true;
-        }
-
-        // Check if player is premium
-        if (plugin.getDatabaseManager().isPremium(uuid)) {
-            sender.sendMessage(ChatColor.RED + "Cannot change password for premium players!");
-            return true;
-        }
-
-        // Change password
-        String newHash = PasswordUtils.hash(newPassword);
-        plugin.getDatabaseManager().changePassword(uuid, newHash);
-
-        sender.sendMessage(ChatColor.GREEN + "Successfully changed password for " + playerName);
-
-        if (onlinePlayer != null) {
-            onlinePlayer.sendMessage(ChatColor.YELLOW + "Your password has been changed by an administrator.");
-        }
-
-        // Audit log
-        plugin.getLogger().info("[ADMIN] " + sender.getName() + " changed password for " + playerName);
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+
+        plugin.getAccountManager().getAccount(uuid).thenComposeAsync(account -> {
+            if (account == null) {
+                sender.sendMessage(ChatColor.RED + "Player is not registered!");
+                return CompletableFuture.completedFuture(false);
+            }
+
+            if (account.isPremium()) {
+                sender.sendMessage(ChatColor.RED + "Cannot change password for premium players!");
+                return CompletableFuture.completedFuture(false);
+            }
+
+            // Change password
+            return plugin.getPasswordService().hash(newPassword).thenCompose(newHash ->
+                    databaseManager.supplyAsync(() -> {
+                        databaseManager.changePassword(uuid, newHash);
+                        plugin.getAccountManager().update(uuid, account.withPasswordHash(newHash));
+                        return true;
+                    }));
+        }, plugin.getMainThreadExecutor()).thenAcceptAsync(changed -> {
+            if (!changed) {
+                return;
+            }
+
+            // Whoever knew the old password must not keep a session that skips the new one
+            plugin.getSessionManager().invalidate(uuid);
+
+            sender.sendMessage(ChatColor.GREEN + "Successfully changed password for " + playerName);
+
+            if (onlinePlayer != null && onlinePlayer.isOnline()) {
+                onlinePlayer.sendMessage(ChatColor.YELLOW + "Your password has been changed by an administrator.");
+                onlinePlayer.sendMessage(ChatColor.YELLOW + "Please log in again using /login <password>");
+                plugin.getLimboManager().sendToLimbo(onlinePlayer);
+            }
+
+            // Audit log
+            plugin.getLogger().info("[ADMIN] " + sender.getName() + " changed password for " + playerName);
+        }, plugin.getMainThreadExecutor()).exceptionally(e -> reportError(sender, "change the password", e));
 
         return true;
     }
@@ -170,32 +200,40 @@ public class AdminCommand implements CommandExecutor {
         UUID uuid = onlinePlayer != null ? onlinePlayer.getUniqueId()
                 : Bukkit.getOfflinePlayer(playerName).getUniqueId();
 
-        // Check if player is registered
-        if (!plugin.getDatabaseManager().isRegistered(uuid)) {
-            sender.sendMessage(ChatColor.RED + "Player is not registered!");
-            return true;
-        }
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
 
-        // Check if player is premium
-        if (plugin.getDatabaseManager().isPremium(uuid)) {
-            sender.sendMessage(ChatColor.RED + "Cannot unregister premium players!");
-            return true;
-        }
+        plugin.getAccountManager().getAccount(uuid).thenComposeAsync(account -> {
+            if (account == null) {
+                sender.sendMessage(ChatColor.RED + "Player is not registered!");
+                return CompletableFuture.completedFuture(false);
+            }
 
-        // Unregister player
-        plugin.getDatabaseManager().unregisterPlayer(uuid);
-        plugin.getSessionManager().logout(uuid);
+            if (account.isPremium()) {
+                sender.sendMessage(ChatColor.RED + "Cannot unregister premium players!");
+                return CompletableFuture.completedFuture(false);
+            }
 
-        sender.sendMessage(ChatColor.GREEN + "Successfully unregistered " + playerName);
+            // Unregister player
+            return databaseManager.unregisterPlayerAsync(uuid).thenApply(ignored -> true);
+        }, plugin.getMainThreadExecutor()).thenAcceptAsync(unregistered -> {
+            if (!unregistered) {
+                return;
+            }
 
-        if (onlinePlayer != null) {
-            onlinePlayer.sendMessage(ChatColor.RED + "Your account has been deleted by an administrator.");
-            onlinePlayer.sendMessage(ChatColor.YELLOW + "Please register again using /register <password> <password>");
-            plugin.getLimboManager().sendToLimbo(onlinePlayer);
-        }
+            plugin.getAccountManager().update(uuid, null);
+            plugin.getSessionManager().invalidate(uuid);
 
-        // Audit log
-        plugin.getLogger().info("[ADMIN] " + sender.getName() + " unregistered " + playerName);
+            sender.sendMessage(ChatColor.GREEN + "Successfully unregistered " + playerName);
+
+            if (onlinePlayer != null && onlinePlayer.isOnline()) {
+                onlinePlayer.sendMessage(ChatColor.RED + "Your account has been deleted by an administrator.");
+                onlinePlayer.sendMessage(ChatColor.YELLOW + "Please register again using /register <password> <password>");
+                plugin.getLimboManager().sendToLimbo(onlinePlayer);
+            }
+
+            // Audit log
+            plugin.getLogger().info("[ADMIN] " + sender.getName() + " unregistered " + playerName);
+        }, plugin.getMainThreadExecutor()).exceptionally(e -> reportError(sender, "unregister", e));
 
         return true;
     }
@@ -218,27 +256,28 @@ public class AdminCommand implements CommandExecutor {
         UUID uuid = onlinePlayer != null ? onlinePlayer.getUniqueId()
                 : Bukkit.getOfflinePlayer(playerName).getUniqueId();
 
-        // Check if player is registered
-        if (!plugin.getDatabaseManager().isRegistered(uuid)) {
-            sender.sendMessage(ChatColor.RED + "Player is not registered!");
-            return true;
-        }
-
-        // Get player info
-        boolean isPremium = plugin.getDatabaseManager().isPremium(uuid);
-        String lastIp = plugin.getDatabaseManager().getLastIp(uuid);
-        boolean isLoggedIn = plugin.getSessionManager().isLoggedIn(uuid);
-
-        // Display info
-        sender.sendMessage(ChatColor.GOLD + "===== Player Info: " + playerName + " =====");
-        sender.sendMessage(ChatColor.YELLOW + "UUID: " + ChatColor.WHITE + uuid.toString());
-        sender.sendMessage(ChatColor.YELLOW + "Registered: " + ChatColor.GREEN + "Yes");
-        sender.sendMessage(
-                ChatColor.YELLOW + "Premium: " + (isPremium ? ChatColor.GREEN + "Yes" : ChatColor.RED + "No"));
-        sender.sendMessage(ChatColor.YELLOW + "Last IP: " + ChatColor.WHITE + (lastIp != null ? lastIp : "N/A"));
-        sender.sendMessage(ChatColor.YELLOW + "Currently Logged In: "
-                + (isLoggedIn ? ChatColor.GREEN + "Yes" : ChatColor.RED + "No"));
-        sender.sendMessage(ChatColor.GOLD + "================================");
+        plugin.getAccountManager().getAccount(uuid).thenAcceptAsync(account -> {
+            if (account == null) {
+                sender.sendMessage(ChatColor.RED + "Player is not registered!");
+                return;
+            }
+
+            // Get player info
+            boolean isPremium = account.isPremium();
+            String lastIp = account.getLastIp();
+            boolean isLoggedIn = plugin.getSessionManager().isLoggedIn(uuid);
+
+            // Display info
+            sender.sendMessage(ChatColor.GOLD + "===== Player Info: " + playerName + " =====");
+            sender.sendMessage(ChatColor.YELLOW + "UUID: " + ChatColor.WHITE + uuid.toString());
+            sender.sendMessage(ChatColor.YELLOW + "Registered: " + ChatColor.GREEN + "Yes");
+            sender.sendMessage(
+                    ChatColor.YELLOW + "Premium: " + (isPremium ? ChatColor.GREEN + "Yes" : ChatColor.RED + "No"));
+            sender.sendMessage(ChatColor.YELLOW + "Last IP: " + ChatColor.WHITE + (lastIp != null ? lastIp : "N/A"));
+            sender.sendMessage(ChatColor.YELLOW + "Currently Logged In: "
+                    + (isLoggedIn ? ChatColor.GREEN + "Yes" : ChatColor.RED + "No"));
+            sender.sendMessage(ChatColor.GOLD + "================================");
+        }, plugin.getMainThreadExecutor()).exceptionally(e -> reportError(sender, "look up the player", e));
 
         return true;
     }
@@ -258,6 +297,62 @@ public class AdminCommand implements CommandExecutor {
         return true;
     }
 
+    private boolean handleStats(CommandSender sender) {
+        if (!sender.hasPermission("powerauth.admin.stats")) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
+            return true;
+        }
+
+        MetricsRegistry metrics = plugin.getMetrics();
+
+        sender.sendMessage(ChatColor.GOLD + "===== PowerAuth Stats =====");
+        sender.sendMessage(ChatColor.GOLD + "Timings " + ChatColor.GRAY
+                + "(count: p50 / p99 / max ms of the last 5-10 min)");
+        for (Histogram histogram : metrics.getMetrics(Histogram.class)) {
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            sender.sendMessage(ChatColor.YELLOW + label(histogram.getName()) + ": " + ChatColor.WHITE
+                    + histogram.getCount() + ": " + millis(histogram.getQuantileMicros(0.5)) + " / "
+                    + millis(histogram.getQuantileMicros(0.99)) + " / " + millis(histogram.getMaxMicros()));
+        }
+
+        sender.sendMessage(ChatColor.GOLD + "Counters");
+        for (Counter counter : metrics.getMetrics(Counter.class)) {
+            sender.sendMessage(ChatColor.YELLOW + label(counter.getName()) + ": " + ChatColor.WHITE + counter.get());
+        }
+        for (Gauge gauge : metrics.getMetrics(Gauge.class)) {
+            sender.sendMessage(ChatColor.YELLOW + label(gauge.getName()) + ": " + ChatColor.WHITE + gauge.get());
+        }
+
+        PoolStats poolStats = plugin.getDatabaseManager().getPoolStats();
+        if (poolStats != null) {
+            sender.sendMessage(ChatColor.YELLOW + "database pool: " + ChatColor.WHITE + poolStats);
+        }
+        sender.sendMessage(ChatColor.GOLD + "================================");
+
+        return true;
+    }
+
+    /**
+     * Log a failed async admin action and tell the sender, back on the main thread
+     */
+    private Void reportError(CommandSender sender, String action, Throwable error) {
+        plugin.getLogger().log(Level.SEVERE, "[ADMIN] " + sender.getName() + " failed to " + action, error);
+        plugin.getMainThreadExecutor().execute(() -> sender.sendMessage(ChatColor.RED + "Failed to " + action
+                + ", the server may be busy. See the console for details."));
+        return null;
+    }
+
+    // powerauth_database_task_seconds -> database task
+    private static String label(String name) {
+        return name.replaceFirst("^powerauth_", "").replaceFirst("_(seconds|total)$", "").replace('_', ' ');
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.1f", micros / 1000.0);
+    }
+
     private void sendHelp(CommandSender sender) {
         sender.sendMessage(ChatColor.GOLD + "===== PowerAuth Admin Commands =====");
 
@@ -283,6 +378,10 @@ public class AdminCommand implements CommandExecutor {
             sender.sendMessage(ChatColor.YELLOW + "/pa reload" + ChatColor.GRAY + " - Reload configuration");
         }
 
+        if (sender.hasPermission("powerauth.admin.stats")) {
+            sender.sendMessage(ChatColor.YELLOW + "/pa stats" + ChatColor.GRAY + " - Login pipeline metrics");
+        }
+
         sender.sendMessage(ChatColor.GOLD + "====================================");
     }
 }
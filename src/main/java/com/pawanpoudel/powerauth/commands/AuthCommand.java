@@ -1,22 +1,53 @@
 package com.pawanpoudel.powerauth.commands;
 
 import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.database.AccountSnapshot;
+import com.pawanpoudel.powerauth.database.DatabaseManager;
+import com.pawanpoudel.powerauth.managers.AccountManager;
 import com.pawanpoudel.powerauth.managers.SessionManager;
-import com.pawanpoudel.powerauth.utils.PasswordUtils;
+import com.pawanpoudel.powerauth.metrics.Counter;
+import com.pawanpoudel.powerauth.metrics.Histogram;
+import com.pawanpoudel.powerauth.security.LoginThrottle;
+import com.pawanpoudel.powerauth.security.PasswordService;
+import com.pawanpoudel.powerauth.tracing.LoginPhase;
+import com.pawanpoudel.powerauth.tracing.LoginPhaseEvent;
+import com.pawanpoudel.powerauth.tracing.LoginTracer;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 public class AuthCommand implements CommandExecutor {
 
     private final PowerAuth plugin;
     private final SessionManager sessionManager;
+    private final Histogram loginTimer;
+    private final Counter logins;
+    private final Counter failedLogins;
+    private final Counter busyLogins;
+    private final Counter throttledLogins;
+
+    private enum LoginResult {
+        SUCCESS, NOT_REGISTERED, INCORRECT_PASSWORD, BUSY, PENDING
+    }
 
     public AuthCommand(PowerAuth plugin, SessionManager sessionManager) {
         this.plugin = plugin;
         this.sessionManager = sessionManager;
+        this.loginTimer = plugin.getMetrics().histogram("powerauth_login_seconds",
+                "/login from the command until the result is known");
+        this.logins = plugin.getMetrics().counter("powerauth_logins_total", "Successful /login commands");
+        this.failedLogins = plugin.getMetrics().counter("powerauth_login_failures_total",
+                "/login commands with a wrong password");
+        this.busyLogins = plugin.getMetrics().counter("powerauth_login_busy_total",
+                "/login commands refused because the server was too busy to check them");
+        this.throttledLogins = plugin.getMetrics().counter("powerauth_login_throttled_total",
+                "/login commands refused by the failed-login throttle");
     }
 
     @Override
@@ -34,11 +65,6 @@ public class AuthCommand implements CommandExecutor {
                 return true;
             }
 
-            if (plugin.getDatabaseManager().isRegistered(player.getUniqueId())) {
-                player.sendMessage(ChatColor.RED + "You are already registered! Use /login.");
-                return true;
-            }
-
             if (args.length != 2) {
                 player.sendMessage(ChatColor.RED + "Usage: /register <password> <confirmPassword>");
                 return true;
@@ -54,12 +80,55 @@ public class AuthCommand implements CommandExecutor {
                 return true;
             }
 
-            String hash = PasswordUtils.hash(args[0]);
-            plugin.getDatabaseManager().registerPlayer(player.getUniqueId(), player.getName(), hash,
-                    player.getAddress().getAddress().getHostAddress());
-            sessionManager.login(player.getUniqueId());
-            plugin.getLimboManager().sendToMainWorld(player);
-            player.sendMessage(ChatColor.GREEN + "Successfully registered and logged in!");
+            UUID uuid = player.getUniqueId();
+            String name = player.getName();
+            String password = args[0];
+            String ip = player.getAddress().getAddress().getHostAddress();
+            AccountManager accountManager = plugin.getAccountManager();
+            DatabaseManager databaseManager = plugin.getDatabaseManager();
+            PasswordService passwordService = plugin.getPasswordService();
+            LoginTracer tracer = plugin.getLoginTracer();
+            LoginTracer.LoginTrace trace = tracer.start(uuid, name, "register");
+
+            accountManager.getAccount(uuid).thenCompose(existing -> {
+                if (existing != null) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                return LoginPhaseEvent.trace(LoginPhase.HASH, uuid, name, () -> passwordService.hash(uuid, password))
+                        .thenCompose(hash -> LoginPhaseEvent.trace(LoginPhase.DB_SAVE, uuid, name,
+                                () -> databaseManager.supplyAsync(() -> {
+                                    // Only the registration that actually inserted the row may cache its hash
+                                    if (!databaseManager.registerPlayer(uuid, name, hash, ip)) {
+                                        return false;
+                                    }
+                                    accountManager.update(uuid, new AccountSnapshot(uuid, name, hash, false, ip));
+                                    return true;
+                                })));
+            }).whenCompleteAsync((registered, error) -> {
+                if (!player.isOnline()) {
+                    tracer.finish(trace, "disconnected");
+                    return;
+                }
+                if (isPending(error)) {
+                    tracer.finish(trace, "pending");
+                    player.sendMessage(ChatColor.RED + "Your previous attempt is still being checked, please wait.");
+                    return;
+                }
+                if (error != null) {
+                    tracer.finish(trace, "busy");
+                    player.sendMessage(ChatColor.RED + "The server is busy, please try again in a moment.");
+                    return;
+                }
+                if (!registered) {
+                    tracer.finish(trace, "already registered");
+                    player.sendMessage(ChatColor.RED + "You are already registered! Use /login.");
+                    return;
+                }
+                sessionManager.login(uuid, ip);
+                plugin.getLimboManager().sendToMainWorld(player);
+                tracer.finish(trace, "logged in");
+                player.sendMessage(ChatColor.GREEN + "Successfully registered and logged in!");
+            }, plugin.getMainThreadExecutor());
             return true;
         }
 
@@ -69,29 +138,113 @@ public class AuthCommand implements CommandExecutor {
                 return true;
             }
 
-            if (!plugin.getDatabaseManager().isRegistered(player.getUniqueId())) {
-                player.sendMessage(ChatColor.RED + "You are not registered! Use /register.");
-                return true;
-            }
-
             if (args.length != 1) {
                 player.sendMessage(ChatColor.RED + "Usage: /login <password>");
                 return true;
             }
 
-            String storedHash = plugin.getDatabaseManager().getPasswordHash(player.getUniqueId());
-            if (PasswordUtils.check(args[0], storedHash)) {
-                sessionManager.login(player.getUniqueId());
-                plugin.getDatabaseManager().updateIp(player.getUniqueId(),
-                        player.getAddress().getAddress().getHostAddress());
-                plugin.getLimboManager().sendToMainWorld(player);
-                player.sendMessage(ChatColor.GREEN + "Successfully logged in!");
-            } else {
-                player.sendMessage(ChatColor.RED + "Incorrect password!");
+            UUID uuid = player.getUniqueId();
+            String password = args[0];
+            String ip = player.getAddress().getAddress().getHostAddress();
+            LoginThrottle loginThrottle = plugin.getLoginThrottle();
+
+            // Counted before any database or hashing work so spraying costs us next to nothing,
+            // and so concurrent attempts cannot all pass the check before the first one fails
+            long attempt = loginThrottle.tryAttempt(uuid, ip);
+            if (attempt < 0) {
+                throttledLogins.increment();
+                // The limit fades out gradually, so there is no exact time to quote
+                player.sendMessage(ChatColor.RED
+                        + "Too many failed attempts! Please wait a few minutes before trying again.");
+                // Refusals beyond the first of each window only show in the counter
+                if (loginThrottle.claimRefusalReport(uuid)) {
+                    plugin.getAdminSecurityManager().logFailedLogin(player.getName(), ip, "Too many failed attempts");
+                }
+                return true;
             }
+            AccountManager accountManager = plugin.getAccountManager();
+            DatabaseManager databaseManager = plugin.getDatabaseManager();
+            PasswordService passwordService = plugin.getPasswordService();
+            LoginTracer tracer = plugin.getLoginTracer();
+            LoginTracer.LoginTrace trace = tracer.start(uuid, player.getName(), "password");
+
+            long start = System.nanoTime();
+            accountManager.getAccount(uuid).thenCompose(account -> {
+                if (account == null) {
+                    return CompletableFuture.completedFuture(LoginResult.NOT_REGISTERED);
+                }
+                return LoginPhaseEvent.trace(LoginPhase.HASH, uuid, player.getName(),
+                        () -> passwordService.verify(uuid, password, account.getPasswordHash())).thenCompose(verification -> {
+                    if (!verification.isMatched()) {
+                        return CompletableFuture.completedFuture(LoginResult.INCORRECT_PASSWORD);
+                    }
+                    return LoginPhaseEvent.trace(LoginPhase.DB_SAVE, uuid, player.getName(),
+                            () -> databaseManager.supplyAsync(() -> {
+                        AccountSnapshot updated = account;
+                        // Legacy or outdated hash - store the stronger one now that we know the password
+                        if (verification.getUpgradedHash() != null) {
+                            databaseManager.changePassword(uuid, verification.getUpgradedHash());
+                            updated = updated.withPasswordHash(verification.getUpgradedHash());
+                        }
+                        if (!ip.equals(account.getLastIp())) {
+                            databaseManager.updateIp(uuid, ip);
+                            updated = updated.withLastIp(ip);
+                        }
+                        if (updated != account) {
+                            accountManager.update(uuid, updated);
+                        }
+                        return LoginResult.SUCCESS;
+                    }));
+                });
+            }).exceptionally(AuthCommand::failureResult).thenAcceptAsync(result -> {
+                loginTimer.recordSince(start);
+                if (result != LoginResult.INCORRECT_PASSWORD) {
+                    loginThrottle.refund(uuid, ip, attempt);
+                }
+                if (!player.isOnline()) {
+                    tracer.finish(trace, "disconnected");
+                    return;
+                }
+
+                switch (result) {
+                    case SUCCESS:
+                        logins.increment();
+                        sessionManager.login(uuid, ip);
+                        plugin.getLimboManager().sendToMainWorld(player);
+                        player.sendMessage(ChatColor.GREEN + "Successfully logged in!");
+                        break;
+                    case NOT_REGISTERED:
+                        player.sendMessage(ChatColor.RED + "You are not registered! Use /register.");
+                        break;
+                    case BUSY:
+                        busyLogins.increment();
+                        player.sendMessage(ChatColor.RED + "The server is busy, please try again in a moment.");
+                        break;
+                    case PENDING:
+                        player.sendMessage(ChatColor.RED
+                                + "Your previous attempt is still being checked, please wait.");
+                        break;
+                    case INCORRECT_PASSWORD:
+                    default:
+                        failedLogins.increment();
+                        player.sendMessage(ChatColor.RED + "Incorrect password!");
+                        plugin.getAdminSecurityManager().logFailedLogin(player.getName(), ip, "Incorrect password");
+                        break;
+                }
+                tracer.finish(trace, result.name().toLowerCase());
+            }, plugin.getMainThreadExecutor());
             return true;
         }
 
         return false;
     }
+
+    private static LoginResult failureResult(Throwable error) {
+        return isPending(error) ? LoginResult.PENDING : LoginResult.BUSY;
+    }
+
+    private static boolean isPending(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof PasswordService.AlreadyPendingException;
+    }
 }
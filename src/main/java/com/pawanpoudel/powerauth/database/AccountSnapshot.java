@@ -0,0 +1,55 @@
+package com.pawanpoudel.powerauth.database;
+
+import java.util.UUID;
+
+/**
+ * Immutable view of a row in the players table, loaded with a single query
+ */
+public final class AccountSnapshot {
+
+    private final UUID uuid;
+    private final String username;
+    private final String passwordHash;
+    private final boolean premium;
+    private final String lastIp;
+
+    public AccountSnapshot(UUID uuid, String username, String passwordHash, boolean premium, String lastIp) {
+        this.uuid = uuid;
+        this.username = username;
+        this.passwordHash = passwordHash;
+        this.premium = premium;
+        this.lastIp = lastIp;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    public boolean isPremium() {
+        return premium;
+    }
+
+    public String getLastIp() {
+        return lastIp;
+    }
+
+    public AccountSnapshot withPasswordHash(String passwordHash) {
+        return new AccountSnapshot(uuid, username, passwordHash, premium, lastIp);
+    }
+
+    public AccountSnapshot withPremium(boolean premium) {
+        return new AccountSnapshot(uuid, username, passwordHash, premium, lastIp);
+    }
+
+    public AccountSnapshot withLastIp(String lastIp) {
+        return new AccountSnapshot(uuid, username, passwordHash, premium, lastIp);
+    }
+}
@@ -1,6 +1,7 @@
 package com.pawanpoudel.powerauth.database;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 public interface DatabaseConnection {
@@ -13,6 +14,56 @@ public interface DatabaseConnection {
      */
     Connection getConnection() throws SQLException;
 
+    /**
+     * Hand a connection obtained from {@link #getConnection()} back.
+     * Pooled implementations return it to the pool.
+     *
+     * @param connection the connection to release
+     * @throws SQLException if releasing fails
+     */
+    default void releaseConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * Run work that modifies the database. By default it runs on a connection
+     * from {@link #getConnection()}; engines with a single writer override this.
+     *
+     * @param work the work to run
+     * @return the result of the work
+     * @throws SQLException if the work fails
+     */
+    default <T> T executeWrite(QueryExecutor.ConnectionCallback<T> work) throws SQLException {
+        Connection connection = getConnection();
+        try {
+            return work.doInConnection(connection);
+        } finally {
+            releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Prepare a statement on a borrowed connection. Engines may return a cached statement.
+     *
+     * @param connection the borrowed connection
+     * @param sql the statement
+     * @return the prepared statement
+     * @throws SQLException if preparing fails
+     */
+    default PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * Hand back a statement obtained from {@link #prepareStatement(Connection, String)}
+     *
+     * @param statement the statement to release
+     * @throws SQLException if releasing fails
+     */
+    default void releaseStatement(PreparedStatement statement) throws SQLException {
+        statement.close();
+    }
+
     /**
      * Initialize the database connection
      */
@@ -29,4 +80,13 @@ public interface DatabaseConnection {
      * @return true if connection is valid
      */
     boolean isValid();
+
+    /**
+     * Get connection pool statistics
+     * 
+     * @return pool statistics, or null if the connection is not pooled
+     */
+    default PoolStats getPoolStats() {
+        return null;
+    }
 }
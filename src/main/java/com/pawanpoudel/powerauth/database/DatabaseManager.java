@@ -1,29 +1,59 @@
 package com.pawanpoudel.powerauth.database;
 
 import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.metrics.Histogram;
+import com.pawanpoudel.powerauth.tracing.LoginPhase;
+import com.pawanpoudel.powerauth.tracing.LoginPhaseEvent;
+import com.pawanpoudel.powerauth.utils.TinyLfuCache;
+import org.bukkit.scheduler.BukkitTask;
 
-import java.io.File;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class DatabaseManager {
 
     private final PowerAuth plugin;
+    private String dbType;
     private DatabaseConnection databaseConnection;
+    private QueryExecutor queryExecutor;
+    private ExecutorService executor;
+    // Empty optional = known to be unregistered
+    private TinyLfuCache<UUID, Optional<AccountSnapshot>> playerCache;
+    private WriteBehindBuffer writeBehind;
+    private int writeBehindThreshold;
+    private BukkitTask flushTask;
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final Histogram queueTimer;
+    private final Histogram taskTimer;
+    private final Histogram flushTimer;
 
     public DatabaseManager(PowerAuth plugin) {
         this.plugin = plugin;
+        this.queueTimer = plugin.getMetrics().histogram("powerauth_database_queue_seconds",
+                "Time database tasks wait for a database thread");
+        this.taskTimer = plugin.getMetrics().histogram("powerauth_database_task_seconds",
+                "Time database tasks take to run once they have a thread");
+        this.flushTimer = plugin.getMetrics().histogram("powerauth_database_flush_seconds",
+                "Write-behind flushes of buffered last-IP and premium updates");
         initialize();
     }
 
     private void initialize() {
-        String dbType = plugin.getConfig().getString("database.type", "sqlite").toLowerCase();
+        dbType = plugin.getConfig().getString("database.type", "sqlite").toLowerCase();
 
         plugin.getLogger().info("Initializing " + dbType.toUpperCase() + " database...");
 
@@ -42,7 +72,74 @@ public class DatabaseManager {
         }
 
         databaseConnection.initialize();
+        queryExecutor = new QueryExecutor(databaseConnection, plugin.getMetrics().counter(
+                "powerauth_database_statements_total", "SQL statements sent to the database"));
         createTables();
+        createExecutor();
+
+        if (plugin.getConfig().getBoolean("advanced.cache-player-data", true)) {
+            playerCache = new TinyLfuCache<>(plugin.getConfig().getInt("advanced.cache-size", 100));
+        }
+
+        createWriteBehind();
+    }
+
+    private void createWriteBehind() {
+        long interval = plugin.getConfig().getLong("database.auto-save-interval", 300);
+        if (interval <= 0) {
+            return;
+        }
+
+        writeBehind = new WriteBehindBuffer(queryExecutor, this::invalidate);
+        writeBehindThreshold = Math.max(1, plugin.getConfig().getInt("database.write-behind-threshold", 500));
+        flushTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::flushWriteBehind,
+                interval * 20L, interval * 20L);
+    }
+
+    /**
+     * Write all buffered last-IP and premium updates now
+     */
+    public void flushWriteBehind() {
+        if (writeBehind == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            writeBehind.flush();
+            flushTimer.recordSince(start);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to flush buffered player updates!", e);
+        }
+    }
+
+    private void flushIfFull() {
+        if (writeBehind.size() >= writeBehindThreshold && flushQueued.compareAndSet(false, true)) {
+            runAsync(() -> {
+                flushQueued.set(false);
+                flushWriteBehind();
+            });
+        }
+    }
+
+    private void createExecutor() {
+        if (!plugin.getConfig().getBoolean("advanced.async-database", true)) {
+            plugin.getLogger().info("Async database is disabled, queries will run on the calling thread.");
+            return;
+        }
+
+        int threads = Math.max(1, plugin.getConfig().getInt("advanced.thread-pool-size", 2));
+        AtomicInteger threadId = new AtomicInteger();
+
+        // Bounded queue: once it is full the caller runs the query itself, which slows
+        // producers down instead of letting the backlog grow without limit
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(1024),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "PowerAuth-DB-" + threadId.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
     }
 
     private void createTables() {
@@ -54,135 +151,419 @@ public class DatabaseManager {
                 "last_ip VARCHAR(45)" +
                 ");";
 
-        try (Statement stmt = databaseConnection.getConnection().createStatement()) {
-            stmt.execute(sql);
+        try {
+            queryExecutor.execute(sql);
         } catch (SQLException e) {
             plugin.getLogger().log(Level.SEVERE, "Could not create tables!", e);
         }
+
+        createIndex("idx_players_username", "players (username)");
+        // Premium lookups match names case-insensitively; MySQL's default collation already does
+        if (!dbType.equals("mysql")) {
+            createIndex("idx_players_username_lower", "players ((LOWER(username)))");
+        }
+
+        try {
+            queryExecutor.execute("CREATE TABLE IF NOT EXISTS sessions (" +
+                    "uuid VARCHAR(36) PRIMARY KEY," +
+                    "ip VARCHAR(45) NOT NULL," +
+                    "issued BIGINT NOT NULL," +
+                    "expires BIGINT NOT NULL" +
+                    ");");
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not create sessions table!", e);
+        }
+    }
+
+    private void createIndex(String name, String definition) {
+        boolean mysql = dbType.equals("mysql");
+        try {
+            // MySQL has no CREATE INDEX IF NOT EXISTS
+            queryExecutor.execute("CREATE INDEX " + (mysql ? "" : "IF NOT EXISTS ") + name + " ON " + definition);
+        } catch (SQLException e) {
+            // 1061 = ER_DUP_KEYNAME, the index already exists
+            if (!mysql || e.getErrorCode() != 1061) {
+                plugin.getLogger().log(Level.SEVERE, "Could not create index " + name + "!", e);
+            }
+        }
     }
 
     public void close() {
+        if (flushTask != null) {
+            flushTask.cancel();
+        }
+
+        if (playerCache != null && plugin.getConfig().getBoolean("general.debug", false)) {
+            plugin.getLogger().info("Player cache: " + playerCache.getHits() + " hits, " + playerCache.getMisses()
+                    + " misses, " + playerCache.getEvictions() + " evictions");
+        }
+
+        PoolStats poolStats = getPoolStats();
+        if (poolStats != null && plugin.getConfig().getBoolean("general.debug", false)) {
+            plugin.getLogger().info("Connection pool: " + poolStats);
+        }
+
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    plugin.getLogger().warning("Timed out waiting for pending database tasks to finish.");
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (writeBehind != null && writeBehind.size() > 0) {
+            if (plugin.getConfig().getBoolean("general.save-on-shutdown", true)) {
+                flushWriteBehind();
+            } else {
+                plugin.getLogger().warning("Discarding " + writeBehind.size() + " buffered player updates.");
+            }
+        }
+
         if (databaseConnection != null) {
             databaseConnection.close();
         }
     }
 
-    public Connection getConnection() {
+    /**
+     * @return the player cache, or null if advanced.cache-player-data is disabled
+     */
+    public TinyLfuCache<UUID, Optional<AccountSnapshot>> getPlayerCache() {
+        return playerCache;
+    }
+
+    private void invalidate(UUID uuid) {
+        if (playerCache != null) {
+            playerCache.invalidate(uuid);
+        }
+    }
+
+    /**
+     * Run custom queries; connections are released by the executor
+     */
+    public QueryExecutor getQueryExecutor() {
+        return queryExecutor;
+    }
+
+    /**
+     * @return connection pool statistics, or null for non-pooled databases
+     */
+    public PoolStats getPoolStats() {
+        return databaseConnection != null ? databaseConnection.getPoolStats() : null;
+    }
+
+    /**
+     * Run a task on the database executor, or inline when async-database is disabled.
+     * Use this to group several helper calls into a single off-thread task.
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        if (executor == null) {
+            try {
+                return CompletableFuture.completedFuture(timed(task));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        long submitted = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            queueTimer.recordSince(submitted);
+            return timed(task);
+        }, executor);
+    }
+
+    private <T> T timed(Supplier<T> task) {
+        long start = System.nanoTime();
         try {
-            return databaseConnection.getConnection();
+            return task.get();
+        } finally {
+            taskTimer.recordSince(start);
+        }
+    }
+
+    public CompletableFuture<Void> runAsync(Runnable task) {
+        return supplyAsync(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // Async helper methods
+    public CompletableFuture<AccountSnapshot> loadAccountAsync(UUID uuid) {
+        return supplyAsync(() -> loadAccount(uuid));
+    }
+
+    public CompletableFuture<Boolean> isRegisteredAsync(UUID uuid) {
+        return supplyAsync(() -> isRegistered(uuid));
+    }
+
+    public CompletableFuture<Boolean> registerPlayerAsync(UUID uuid, String username, String passwordHash, String ip) {
+        return supplyAsync(() -> registerPlayer(uuid, username, passwordHash, ip));
+    }
+
+    public CompletableFuture<String> getPasswordHashAsync(UUID uuid) {
+        return supplyAsync(() -> getPasswordHash(uuid));
+    }
+
+    public CompletableFuture<String> getLastIpAsync(UUID uuid) {
+        return supplyAsync(() -> getLastIp(uuid));
+    }
+
+    public CompletableFuture<Void> updateIpAsync(UUID uuid, String ip) {
+        return runAsync(() -> updateIp(uuid, ip));
+    }
+
+    public CompletableFuture<Void> setPremiumAsync(UUID uuid, boolean premium) {
+        return runAsync(() -> setPremium(uuid, premium));
+    }
+
+    public CompletableFuture<Boolean> isPremiumAsync(UUID uuid) {
+        return supplyAsync(() -> isPremium(uuid));
+    }
+
+    public CompletableFuture<Void> changePasswordAsync(UUID uuid, String newHash) {
+        return runAsync(() -> changePassword(uuid, newHash));
+    }
+
+    public CompletableFuture<Void> unregisterPlayerAsync(UUID uuid) {
+        return runAsync(() -> unregisterPlayer(uuid));
+    }
+
+    public CompletableFuture<Void> saveSessionAsync(SessionRecord session) {
+        return runAsync(() -> saveSessions(Collections.singletonList(session)));
+    }
+
+    public CompletableFuture<Void> deleteSessionAsync(UUID uuid) {
+        return runAsync(() -> deleteSession(uuid));
+    }
+
+    // Blocking helper methods - never call these from the main thread
+
+    /**
+     * Load the whole player row in one round trip
+     *
+     * @return the account, or null if the player is not registered
+     */
+    public AccountSnapshot loadAccount(UUID uuid) {
+        AccountSnapshot account;
+        // Taken before the query, so a row read before a concurrent update is not cached after its invalidate
+        long stamp = playerCache != null ? playerCache.stamp(uuid) : 0;
+        Optional<AccountSnapshot> cached = playerCache != null ? playerCache.get(uuid) : null;
+        if (cached != null) {
+            account = cached.orElse(null);
+        } else {
+            account = queryAccount(uuid);
+            if (playerCache != null) {
+                playerCache.putIfUnchanged(uuid, Optional.ofNullable(account), stamp);
+            }
+        }
+
+        // Buffered updates are not in the database yet
+        return writeBehind != null ? writeBehind.apply(account) : account;
+    }
+
+    private AccountSnapshot queryAccount(UUID uuid) {
+        LoginPhaseEvent trace = LoginPhaseEvent.start(LoginPhase.DB_LOAD, uuid, null);
+        try {
+            AccountSnapshot account = queryExecutor.queryOne(
+                    "SELECT uuid, username, password_hash, is_premium, last_ip FROM players WHERE uuid = ?",
+                    ps -> ps.setString(1, uuid.toString()),
+                    rs -> new AccountSnapshot(uuid, rs.getString("username"), rs.getString("password_hash"),
+                            rs.getBoolean("is_premium"), rs.getString("last_ip")));
+            trace.end(true);
+            return account;
         } catch (SQLException e) {
+            trace.end(false);
             e.printStackTrace();
             return null;
         }
     }
 
-    // Helper methods
-    public boolean isRegistered(UUID uuid) {
-        try (PreparedStatement ps = databaseConnection.getConnection()
-                .prepareStatement("SELECT * FROM players WHERE uuid = ?")) {
-            ps.setString(1, uuid.toString());
-            return ps.executeQuery().next();
+    /**
+     * Find the UUID of a stored premium account by its name, ignoring case like Mojang does
+     *
+     * @return the premium UUID, or null if no premium account uses the name
+     */
+    public UUID findPremiumUUID(String username) {
+        String match = dbType.equals("mysql") ? "username = ?" : "LOWER(username) = LOWER(?)";
+        try {
+            return queryExecutor.queryOne("SELECT uuid FROM players WHERE " + match + " AND is_premium = ?",
+                    ps -> {
+                        ps.setString(1, username);
+                        ps.setBoolean(2, true);
+                    },
+                    rs -> UUID.fromString(rs.getString("uuid")));
         } catch (SQLException e) {
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
 
-    public void registerPlayer(UUID uuid, String username, String passwordHash, String ip) {
-        try (PreparedStatement ps = databaseConnection.getConnection()
-                .prepareStatement("INSERT INTO players (uuid, username, password_hash, last_ip) VALUES (?, ?, ?, ?)")) {
+    public boolean isRegistered(UUID uuid) {
+        return loadAccount(uuid) != null;
+    }
+
+    /**
+     * Insert a new account unless the UUID is already registered. Two registrations
+     * racing each other both get past the existence check, so the insert decides.
+     *
+     * @return true if this call created the account
+     */
+    public boolean registerPlayer(UUID uuid, String username, String passwordHash, String ip) {
+        String columns = "players (uuid, username, password_hash, last_ip) VALUES (?, ?, ?, ?)";
+        String sql;
+        if (dbType.startsWith("postgres")) {
+            sql = "INSERT INTO " + columns + " ON CONFLICT (uuid) DO NOTHING";
+        } else if (dbType.equals("mysql")) {
+            sql = "INSERT IGNORE INTO " + columns;
+        } else {
+            sql = "INSERT OR IGNORE INTO " + columns;
+        }
+
+        boolean inserted = update(sql, ps -> {
             ps.setString(1, uuid.toString());
             ps.setString(2, username);
             ps.setString(3, passwordHash);
             ps.setString(4, ip);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        }) > 0;
+        invalidate(uuid);
+        return inserted;
     }
 
     public String getPasswordHash(UUID uuid) {
-        try (PreparedStatement ps = databaseConnection.getConnection()
-                .prepareStatement("SELECT password_hash FROM players WHERE uuid = ?")) {
-            ps.setString(1, uuid.toString());
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                return rs.getString("password_hash");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        AccountSnapshot account = loadAccount(uuid);
+        return account != null ? account.getPasswordHash() : null;
     }
 
     public String getLastIp(UUID uuid) {
-        try (PreparedStatement ps = databaseConnection.getConnection()
-                .prepareStatement("SELECT last_ip FROM players WHERE uuid = ?")) {
-            ps.setString(1, uuid.toString());
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                return rs.getString("last_ip");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        AccountSnapshot account = loadAccount(uuid);
+        return account != null ? account.getLastIp() : null;
     }
 
     public void updateIp(UUID uuid, String ip) {
-        try (PreparedStatement ps = databaseConnection.getConnection()
-                .prepareStatement("UPDATE players SET last_ip = ? WHERE uuid = ?")) {
+        AccountSnapshot account = loadAccount(uuid);
+        if (account == null || ip.equals(account.getLastIp())) {
+            return;
+        }
+
+        if (writeBehind != null) {
+            writeBehind.updateIp(uuid, ip);
+            flushIfFull();
+            return;
+        }
+
+        update("UPDATE players SET last_ip = ? WHERE uuid = ?", ps -> {
             ps.setString(1, ip);
             ps.setString(2, uuid.toString());
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        });
+        invalidate(uuid);
     }
 
     public void setPremium(UUID uuid, boolean premium) {
-        try (PreparedStatement ps = databaseConnection.getConnection()
-                .prepareStatement("UPDATE players SET is_premium = ? WHERE uuid = ?")) {
+        AccountSnapshot account = loadAccount(uuid);
+        if (account == null || account.isPremium() == premium) {
+            return;
+        }
+
+        if (writeBehind != null) {
+            writeBehind.setPremium(uuid, premium);
+            flushIfFull();
+            return;
+        }
+
+        update("UPDATE players SET is_premium = ? WHERE uuid = ?", ps -> {
             ps.setBoolean(1, premium);
             ps.setString(2, uuid.toString());
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        });
+        invalidate(uuid);
     }
 
     public boolean isPremium(UUID uuid) {
-        try (PreparedStatement ps = databaseConnection.getConnection()
-                .prepareStatement("SELECT is_premium FROM players WHERE uuid = ?")) {
-            ps.setString(1, uuid.toString());
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                return rs.getBoolean("is_premium");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return false;
+        AccountSnapshot account = loadAccount(uuid);
+        return account != null && account.isPremium();
     }
 
     public void changePassword(UUID uuid, String newHash) {
-        try (PreparedStatement ps = databaseConnection.getConnection()
-                .prepareStatement("UPDATE players SET password_hash = ? WHERE uuid = ?")) {
+        update("UPDATE players SET password_hash = ? WHERE uuid = ?", ps -> {
             ps.setString(1, newHash);
             ps.setString(2, uuid.toString());
-            ps.executeUpdate();
+        });
+        invalidate(uuid);
+    }
+
+    public void unregisterPlayer(UUID uuid) {
+        update("DELETE FROM players WHERE uuid = ?", ps -> ps.setString(1, uuid.toString()));
+        deleteSession(uuid);
+        invalidate(uuid);
+    }
+
+    /**
+     * Load every session that has not expired yet, dropping the expired ones
+     */
+    public List<SessionRecord> loadSessions(long now) {
+        update("DELETE FROM sessions WHERE expires <> ? AND expires <= ?", ps -> {
+            ps.setLong(1, SessionRecord.NEVER);
+            ps.setLong(2, now);
+        });
+
+        try {
+            return queryExecutor.query("SELECT uuid, ip, issued, expires FROM sessions", ps -> {
+            }, rs -> new SessionRecord(UUID.fromString(rs.getString("uuid")), rs.getString("ip"),
+                    rs.getLong("issued"), rs.getLong("expires")));
         } catch (SQLException e) {
             e.printStackTrace();
+            return Collections.emptyList();
         }
     }
 
-    public void unregisterPlayer(UUID uuid) {
-        try (PreparedStatement ps = databaseConnection.getConnection()
-                .prepareStatement("DELETE FROM players WHERE uuid = ?")) {
-            ps.setString(1, uuid.toString());
-            ps.executeUpdate();
+    /**
+     * Insert or replace sessions in one batch
+     */
+    public void saveSessions(Collection<SessionRecord> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+
+        String sql = dbType.startsWith("postgres")
+                ? "INSERT INTO sessions (uuid, ip, issued, expires) VALUES (?, ?, ?, ?) "
+                        + "ON CONFLICT (uuid) DO UPDATE SET ip = EXCLUDED.ip, issued = EXCLUDED.issued, "
+                        + "expires = EXCLUDED.expires"
+                : "REPLACE INTO sessions (uuid, ip, issued, expires) VALUES (?, ?, ?, ?)";
+
+        List<QueryExecutor.StatementBinder> binders = new ArrayList<>(sessions.size());
+        for (SessionRecord session : sessions) {
+            binders.add(ps -> {
+                ps.setString(1, session.getUuid().toString());
+                ps.setString(2, session.getIp());
+                ps.setLong(3, session.getIssued());
+                ps.setLong(4, session.getExpires());
+            });
+        }
+
+        try {
+            queryExecutor.batch(sql, binders);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void deleteSession(UUID uuid) {
+        update("DELETE FROM sessions WHERE uuid = ?", ps -> ps.setString(1, uuid.toString()));
+    }
+
+    /**
+     * @return the number of affected rows, 0 if the statement failed
+     */
+    private int update(String sql, QueryExecutor.StatementBinder binder) {
+        try {
+            return queryExecutor.update(sql, binder);
         } catch (SQLException e) {
             e.printStackTrace();
+            return 0;
         }
     }
 }
@@ -0,0 +1,53 @@
+package com.pawanpoudel.powerauth.database;
+
+/**
+ * Point-in-time view of a connection pool
+ */
+public final class PoolStats {
+
+    private final int active;
+    private final int idle;
+    private final int total;
+    private final int waiting;
+    private final int maximum;
+
+    public PoolStats(int active, int idle, int total, int waiting, int maximum) {
+        this.active = active;
+        this.idle = idle;
+        this.total = total;
+        this.waiting = waiting;
+        this.maximum = maximum;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return threads currently blocked waiting for a connection
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public int getMaximum() {
+        return maximum;
+    }
+
+    public boolean isSaturated() {
+        return waiting > 0 || active >= maximum;
+    }
+
+    @Override
+    public String toString() {
+        return "active=" + active + ", idle=" + idle + ", total=" + total + "/" + maximum + ", waiting=" + waiting;
+    }
+}
@@ -3,6 +3,7 @@ package com.pawanpoudel.powerauth.database;
 import com.pawanpoudel.powerauth.PowerAuth;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -27,6 +28,7 @@ public class PostgreSQLConnection implements DatabaseConnection {
             String username = plugin.getConfig().getString("database.postgresql.username", "postgres");
             String password = plugin.getConfig().getString("database.postgresql.password", "password");
             int poolSize = plugin.getConfig().getInt("database.postgresql.pool-size", 10);
+            long leakDetectionThreshold = plugin.getConfig().getLong("database.postgresql.leak-detection-threshold", 10000);
 
             config.setJdbcUrl("jdbc:postgresql://" + host + ":" + port + "/" + database);
             config.setUsername(username);
@@ -36,6 +38,8 @@ public class PostgreSQLConnection implements DatabaseConnection {
             config.setConnectionTimeout(30000);
             config.setIdleTimeout(600000);
             config.setMaxLifetime(1800000);
+            // Logs a stack trace for connections held longer than this (ms, 0 = disabled)
+            config.setLeakDetectionThreshold(leakDetectionThreshold);
 
             // Performance settings
             config.addDataSourceProperty("cachePrepStmts", "true");
@@ -71,4 +75,14 @@ public class PostgreSQLConnection implements DatabaseConnection {
     public boolean isValid() {
         return dataSource != null && !dataSource.isClosed();
     }
+
+    @Override
+    public PoolStats getPoolStats() {
+        if (dataSource == null || dataSource.isClosed() || dataSource.getHikariPoolMXBean() == null) {
+            return null;
+        }
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return new PoolStats(pool.getActiveConnections(), pool.getIdleConnections(), pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection(), dataSource.getMaximumPoolSize());
+    }
 }
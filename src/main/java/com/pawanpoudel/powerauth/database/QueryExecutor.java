@@ -0,0 +1,139 @@
+package com.pawanpoudel.powerauth.database;
+
+import com.pawanpoudel.powerauth.metrics.Counter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs JDBC work against a {@link DatabaseConnection} and always hands the
+ * connection back, even when the work throws. Every DAO query goes through here.
+ */
+public class QueryExecutor {
+
+    private final DatabaseConnection databaseConnection;
+    private final Counter statements;
+
+    public QueryExecutor(DatabaseConnection databaseConnection, Counter statements) {
+        this.databaseConnection = databaseConnection;
+        this.statements = statements;
+    }
+
+    @FunctionalInterface
+    public interface ConnectionCallback<T> {
+        T doInConnection(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface StatementBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T mapRow(ResultSet resultSet) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface StatementCallback<T> {
+        T doInStatement(PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * Borrow a connection for read-only work for the duration of the callback
+     */
+    public <T> T withConnection(ConnectionCallback<T> callback) throws SQLException {
+        Connection connection = databaseConnection.getConnection();
+        try {
+            return callback.doInConnection(connection);
+        } finally {
+            databaseConnection.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Run work that modifies the database on the engine's write path
+     */
+    public <T> T withWriteConnection(ConnectionCallback<T> callback) throws SQLException {
+        return databaseConnection.executeWrite(callback);
+    }
+
+    /**
+     * @return every row mapped, in result order
+     */
+    public <T> List<T> query(String sql, StatementBinder binder, RowMapper<T> mapper) throws SQLException {
+        return withConnection(connection -> withStatement(connection, sql, statement -> {
+            binder.bind(statement);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                List<T> rows = new ArrayList<>();
+                while (resultSet.next()) {
+                    rows.add(mapper.mapRow(resultSet));
+                }
+                return rows;
+            }
+        }));
+    }
+
+    /**
+     * @return the first row mapped, or null if there is none
+     */
+    public <T> T queryOne(String sql, StatementBinder binder, RowMapper<T> mapper) throws SQLException {
+        return withConnection(connection -> withStatement(connection, sql, statement -> {
+            binder.bind(statement);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? mapper.mapRow(resultSet) : null;
+            }
+        }));
+    }
+
+    /**
+     * @return the number of affected rows
+     */
+    public int update(String sql, StatementBinder binder) throws SQLException {
+        return withWriteConnection(connection -> withStatement(connection, sql, statement -> {
+            binder.bind(statement);
+            return statement.executeUpdate();
+        }));
+    }
+
+    /**
+     * Run one statement for every binder as a single JDBC batch
+     *
+     * @return the update count of each batched statement
+     */
+    public int[] batch(String sql, List<StatementBinder> binders) throws SQLException {
+        return withWriteConnection(connection -> withStatement(connection, sql, statement -> {
+            for (StatementBinder binder : binders) {
+                binder.bind(statement);
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }));
+    }
+
+    public void execute(String sql) throws SQLException {
+        withWriteConnection(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statements.increment();
+                statement.execute(sql);
+                return null;
+            }
+        });
+    }
+
+    private <T> T withStatement(Connection connection, String sql, StatementCallback<T> callback)
+            throws SQLException {
+        PreparedStatement statement = databaseConnection.prepareStatement(connection, sql);
+        statements.increment();
+        try {
+            return callback.doInStatement(statement);
+        } finally {
+            databaseConnection.releaseStatement(statement);
+        }
+    }
+}
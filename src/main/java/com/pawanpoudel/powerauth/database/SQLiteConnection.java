@@ -5,12 +5,46 @@ import com.pawanpoudel.powerauth.PowerAuth;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * SQLite in WAL mode: reads are served by a small pool of query-only
+ * connections while every write goes through a single writer thread, which
+ * commits whatever writes are queued together in one transaction.
+ */
 public class SQLiteConnection implements DatabaseConnection {
 
+    private static final int MAX_WRITE_BATCH = 128;
+    private static final long ACQUIRE_TIMEOUT_MS = 30000;
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
     private final PowerAuth plugin;
-    private Connection connection;
+    private Connection writeConnection;
+    private BlockingQueue<Connection> readPool;
+    private int readPoolSize;
+    private final AtomicInteger waitingReaders = new AtomicInteger();
+
+    // Statements are cached per connection; a connection is only used by one thread at a time
+    private final Map<Connection, Map<String, PreparedStatement>> statementCache = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<WriteTask<?>> writeQueue = new LinkedBlockingQueue<>();
+    private Thread writerThread;
+    private volatile boolean running;
 
     public SQLiteConnection(PowerAuth plugin) {
         this.plugin = plugin;
@@ -27,28 +61,224 @@ public class SQLiteConnection implements DatabaseConnection {
             }
 
             Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:" + dataFolder.getAbsolutePath());
+            String url = "jdbc:sqlite:" + dataFolder.getAbsolutePath();
+
+            // The writer opens (and creates) the file first and switches it to WAL
+            writeConnection = DriverManager.getConnection(url);
+            try (Statement stmt = writeConnection.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("PRAGMA synchronous=NORMAL");
+                stmt.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MS);
+            }
+            writeConnection.setAutoCommit(false);
 
-            plugin.getLogger().info("SQLite database connected successfully!");
+            readPoolSize = Math.max(1, plugin.getConfig().getInt("database.sqlite.read-connections", 4));
+            readPool = new ArrayBlockingQueue<>(readPoolSize);
+            for (int i = 0; i < readPoolSize; i++) {
+                Connection reader = DriverManager.getConnection(url);
+                try (Statement stmt = reader.createStatement()) {
+                    stmt.execute("PRAGMA query_only=true");
+                    stmt.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MS);
+                }
+                readPool.add(reader);
+            }
+
+            running = true;
+            writerThread = new Thread(this::runWriter, "PowerAuth-SQLite-Writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+
+            plugin.getLogger().info("SQLite database connected successfully! (WAL, " + readPoolSize
+                    + " read connections)");
         } catch (SQLException | ClassNotFoundException e) {
             plugin.getLogger().severe("Failed to initialize SQLite database!");
             e.printStackTrace();
         }
     }
 
+    /**
+     * Borrow a read-only connection. Release it with {@link #releaseConnection(Connection)}.
+     */
     @Override
     public Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            initialize();
+        if (readPool == null) {
+            throw new SQLException("SQLite database is not initialized");
+        }
+
+        Connection connection = readPool.poll();
+        if (connection != null) {
+            return connection;
+        }
+
+        waitingReaders.incrementAndGet();
+        try {
+            connection = readPool.poll(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a SQLite read connection", e);
+        } finally {
+            waitingReaders.decrementAndGet();
+        }
+
+        if (connection == null) {
+            throw new SQLException("Timed out waiting for a SQLite read connection");
         }
         return connection;
     }
 
+    @Override
+    public void releaseConnection(Connection connection) {
+        if (connection != writeConnection) {
+            readPool.offer(connection);
+        }
+    }
+
+    @Override
+    public <T> T executeWrite(QueryExecutor.ConnectionCallback<T> work) throws SQLException {
+        if (Thread.currentThread() == writerThread) {
+            // Nested write from inside a queued task - already in the transaction
+            return work.doInConnection(writeConnection);
+        }
+        if (!running) {
+            throw new SQLException("SQLite writer is not running");
+        }
+
+        WriteTask<T> task = new WriteTask<>(work);
+        writeQueue.add(task);
+
+        try {
+            return task.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a SQLite write", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    private void runWriter() {
+        List<WriteTask<?>> batch = new ArrayList<>(MAX_WRITE_BATCH);
+
+        while (running || !writeQueue.isEmpty()) {
+            try {
+                WriteTask<?> first = writeQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                writeQueue.drainTo(batch, MAX_WRITE_BATCH - 1);
+                commitBatch(batch);
+            } catch (InterruptedException e) {
+                // close() interrupts to stop waiting; the loop drains what is left
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Run every queued write in one transaction. A failing write is rolled back to
+     * its own savepoint so it does not take the rest of the group down with it.
+     */
+    private void commitBatch(List<WriteTask<?>> batch) {
+        List<WriteTask<?>> succeeded = new ArrayList<>(batch.size());
+
+        for (WriteTask<?> task : batch) {
+            Savepoint savepoint = null;
+            try {
+                savepoint = writeConnection.setSavepoint();
+                task.run(writeConnection);
+                writeConnection.releaseSavepoint(savepoint);
+                succeeded.add(task);
+            } catch (SQLException | RuntimeException e) {
+                rollback(savepoint);
+                task.result.completeExceptionally(e);
+            }
+        }
+
+        try {
+            writeConnection.commit();
+            for (WriteTask<?> task : succeeded) {
+                task.complete();
+            }
+        } catch (SQLException e) {
+            rollback(null);
+            for (WriteTask<?> task : succeeded) {
+                task.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void rollback(Savepoint savepoint) {
+        try {
+            if (savepoint != null) {
+                writeConnection.rollback(savepoint);
+            } else {
+                writeConnection.rollback();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        Map<String, PreparedStatement> statements = statementCache.computeIfAbsent(connection,
+                key -> new HashMap<>());
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    @Override
+    public void releaseStatement(PreparedStatement statement) throws SQLException {
+        // Keep the cached statement open for the next caller on this connection
+        statement.clearParameters();
+    }
+
     @Override
     public void close() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Anything queued after the writer stopped would otherwise wait forever
+        WriteTask<?> orphan;
+        while ((orphan = writeQueue.poll()) != null) {
+            orphan.result.completeExceptionally(new SQLException("SQLite database is closed"));
+        }
+
+        for (Map<String, PreparedStatement> statements : statementCache.values()) {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                }
+            }
+        }
+        statementCache.clear();
+
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+            if (readPool != null) {
+                for (Connection reader : readPool) {
+                    reader.close();
+                }
+                readPool.clear();
+            }
+            if (writeConnection != null && !writeConnection.isClosed()) {
+                writeConnection.close();
                 plugin.getLogger().info("SQLite database connection closed.");
             }
         } catch (SQLException e) {
@@ -59,9 +289,37 @@ public class SQLiteConnection implements DatabaseConnection {
     @Override
     public boolean isValid() {
         try {
-            return connection != null && !connection.isClosed() && connection.isValid(5);
+            return running && writeConnection != null && !writeConnection.isClosed() && writeConnection.isValid(5);
         } catch (SQLException e) {
             return false;
         }
     }
+
+    @Override
+    public PoolStats getPoolStats() {
+        if (readPool == null) {
+            return null;
+        }
+        int idle = readPool.size();
+        return new PoolStats(readPoolSize - idle, idle, readPoolSize, waitingReaders.get(), readPoolSize);
+    }
+
+    private static final class WriteTask<T> {
+        private final QueryExecutor.ConnectionCallback<T> work;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private T value;
+
+        WriteTask(QueryExecutor.ConnectionCallback<T> work) {
+            this.work = work;
+        }
+
+        void run(Connection connection) throws SQLException {
+            value = work.doInConnection(connection);
+        }
+
+        // Only called once the transaction holding this write has committed
+        void complete() {
+            result.complete(value);
+        }
+    }
 }
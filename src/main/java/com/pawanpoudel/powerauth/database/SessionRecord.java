@@ -0,0 +1,56 @@
+package com.pawanpoudel.powerauth.database;
+
+import java.util.UUID;
+
+/**
+ * Immutable row of the sessions table: a login that can be resumed from the
+ * same IP until it expires
+ */
+public final class SessionRecord {
+
+    // Stored in the expires column for sessions that never expire
+    public static final long NEVER = 0L;
+
+    private final UUID uuid;
+    private final String ip;
+    private final long issued;
+    private final long expires;
+
+    public SessionRecord(UUID uuid, String ip, long issued, long expires) {
+        this.uuid = uuid;
+        this.ip = ip;
+        this.issued = issued;
+        this.expires = expires;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    public long getIssued() {
+        return issued;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
+    public boolean isExpired(long now) {
+        return expires != NEVER && now >= expires;
+    }
+
+    /**
+     * @return true if a player joining from this IP may skip /login
+     */
+    public boolean canResume(String ip, long now) {
+        return this.ip.equals(ip) && !isExpired(now);
+    }
+
+    public SessionRecord withExpires(long expires) {
+        return new SessionRecord(uuid, ip, issued, expires);
+    }
+}
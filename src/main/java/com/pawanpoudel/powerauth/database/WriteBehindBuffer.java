@@ -0,0 +1,117 @@
+package com.pawanpoudel.powerauth.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces last_ip and is_premium updates per player (last writer wins) and
+ * writes them as JDBC batches when flushed.
+ */
+public class WriteBehindBuffer {
+
+    private final QueryExecutor queryExecutor;
+    private final Consumer<UUID> onFlushed;
+    private final Map<UUID, PendingUpdate> pending = new ConcurrentHashMap<>();
+
+    public WriteBehindBuffer(QueryExecutor queryExecutor, Consumer<UUID> onFlushed) {
+        this.queryExecutor = queryExecutor;
+        this.onFlushed = onFlushed;
+    }
+
+    public void updateIp(UUID uuid, String ip) {
+        pending.merge(uuid, new PendingUpdate(ip, null), PendingUpdate::merge);
+    }
+
+    public void setPremium(UUID uuid, boolean premium) {
+        pending.merge(uuid, new PendingUpdate(null, premium), PendingUpdate::merge);
+    }
+
+    /**
+     * Overlay the not yet written values on top of a snapshot read from the database
+     */
+    public AccountSnapshot apply(AccountSnapshot account) {
+        if (account == null) {
+            return null;
+        }
+        PendingUpdate update = pending.get(account.getUuid());
+        if (update == null) {
+            return account;
+        }
+        if (update.lastIp != null) {
+            account = account.withLastIp(update.lastIp);
+        }
+        if (update.premium != null) {
+            account = account.withPremium(update.premium);
+        }
+        return account;
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Write everything pending. Entries stay visible to {@link #apply(AccountSnapshot)}
+     * until they are written, and entries that changed meanwhile are kept for the next flush.
+     */
+    public synchronized void flush() throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, PendingUpdate> flushing = new HashMap<>(pending);
+        List<QueryExecutor.StatementBinder> ipUpdates = new ArrayList<>();
+        List<QueryExecutor.StatementBinder> premiumUpdates = new ArrayList<>();
+
+        for (Map.Entry<UUID, PendingUpdate> entry : flushing.entrySet()) {
+            String uuid = entry.getKey().toString();
+            PendingUpdate update = entry.getValue();
+            if (update.lastIp != null) {
+                ipUpdates.add(ps -> {
+                    ps.setString(1, update.lastIp);
+                    ps.setString(2, uuid);
+                });
+            }
+            if (update.premium != null) {
+                premiumUpdates.add(ps -> {
+                    ps.setBoolean(1, update.premium);
+                    ps.setString(2, uuid);
+                });
+            }
+        }
+
+        if (!ipUpdates.isEmpty()) {
+            queryExecutor.batch("UPDATE players SET last_ip = ? WHERE uuid = ?", ipUpdates);
+        }
+        if (!premiumUpdates.isEmpty()) {
+            queryExecutor.batch("UPDATE players SET is_premium = ? WHERE uuid = ?", premiumUpdates);
+        }
+
+        for (Map.Entry<UUID, PendingUpdate> entry : flushing.entrySet()) {
+            onFlushed.accept(entry.getKey());
+            pending.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static final class PendingUpdate {
+        // null = unchanged
+        private final String lastIp;
+        private final Boolean premium;
+
+        PendingUpdate(String lastIp, Boolean premium) {
+            this.lastIp = lastIp;
+            this.premium = premium;
+        }
+
+        PendingUpdate merge(PendingUpdate newer) {
+            return new PendingUpdate(newer.lastIp != null ? newer.lastIp : lastIp,
+                    newer.premium != null ? newer.premium : premium);
+        }
+    }
+}
@@ -2,21 +2,27 @@ package com.pawanpoudel.powerauth.listeners;
 
 import com.pawanpoudel.powerauth.PowerAuth;
 import com.pawanpoudel.powerauth.managers.SessionManager;
+import com.pawanpoudel.powerauth.tracing.LoginTracer;
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerDropItemEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 import java.util.UUID;
+import java.util.logging.Level;
 
 public class AuthListener implements Listener {
 
@@ -28,37 +34,81 @@ public class AuthListener implements Listener {
         this.sessionManager = sessionManager;
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED)
+            return;
+
+        // Already off the main thread - load the account now so the join needs no query
+        plugin.getAccountManager().prefetch(event.getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            plugin.getAccountManager().remove(event.getPlayer().getUniqueId());
+        }
+    }
+
     @EventHandler
     public void onJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
         UUID uuid = player.getUniqueId();
         String currentIp = player.getAddress().getAddress().getHostAddress();
 
-        // Skip this check for premium players - they are handled by LoginListener
-        if (plugin.getDatabaseManager().isPremium(uuid)) {
+        // Premium players are already logged in by LoginListener
+        if (sessionManager.isLoggedIn(uuid))
+            return;
+
+        // Same IP within the session timeout - no login round trip needed
+        if (sessionManager.resume(uuid, currentIp)) {
+            player.sendMessage(ChatColor.GREEN + "Welcome back! Your session was resumed.");
             return;
         }
 
-        if (plugin.getDatabaseManager().isRegistered(uuid)) {
-            String lastIp = plugin.getDatabaseManager().getLastIp(uuid);
-            if (currentIp.equals(lastIp)) {
-                sessionManager.login(uuid);
+        // Cancelled by the login hook as soon as the player logs in by any means
+        plugin.getLoginTimeoutManager().schedule(uuid);
+
+        // Completes inline when the account was prefetched during pre-login
+        plugin.getAccountManager().load(uuid).thenAcceptAsync(account -> {
+            if (!player.isOnline()) {
+                return;
+            }
+
+            if (account == null) {
+                plugin.getLimboManager().sendToLimbo(player);
+                player.sendMessage(ChatColor.YELLOW + "Please register using /register <password> <confirmPassword>");
+                return;
+            }
+
+            // Skip this check for premium players - they are handled by LoginListener
+            if (account.isPremium()) {
+                return;
+            }
+
+            if (currentIp.equals(account.getLastIp())) {
+                LoginTracer.LoginTrace trace = plugin.getLoginTracer().start(uuid, player.getName(), "ip");
+                sessionManager.login(uuid, currentIp);
                 plugin.getLimboManager().sendToMainWorld(player);
+                plugin.getLoginTracer().finish(trace, "logged in");
                 player.sendMessage(ChatColor.GREEN + "Auto-logged in via IP!");
                 return;
             }
+
             plugin.getLimboManager().sendToLimbo(player);
             player.sendMessage(ChatColor.YELLOW + "Please log in using /login <password>");
-        } else {
-            plugin.getLimboManager().sendToLimbo(player);
-            player.sendMessage(ChatColor.YELLOW + "Please register using /register <password> <confirmPassword>");
-        }
+        }, plugin.getMainThreadExecutor()).exceptionally(e -> {
+            plugin.getLogger().log(Level.SEVERE, "Failed to process join for " + player.getName(), e);
+            return null;
+        });
     }
 
     @EventHandler
     public void onQuit(PlayerQuitEvent event) {
         UUID uuid = event.getPlayer().getUniqueId();
         sessionManager.logout(uuid);
+        plugin.getLoginTimeoutManager().cancel(uuid);
+        plugin.getAccountManager().remove(uuid);
         plugin.getLimboManager().cleanup(uuid);
     }
 
@@ -112,6 +162,13 @@ public class AuthListener implements Listener {
             event.setCancelled(true);
     }
 
+    @EventHandler
+    public void onDamage(EntityDamageEvent event) {
+        // Players in virtual limbo stand in the real world, keep them safe until they log in
+        if (event.getEntity() instanceof Player && !sessionManager.isLoggedIn(event.getEntity().getUniqueId()))
+            event.setCancelled(true);
+    }
+
     @EventHandler
     public void onDrop(PlayerDropItemEvent event) {
         if (!sessionManager.isLoggedIn(event.getPlayer().getUniqueId()))
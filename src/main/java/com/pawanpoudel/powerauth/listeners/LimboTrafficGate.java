@@ -0,0 +1,286 @@
+package com.pawanpoudel.powerauth.listeners;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.protocol.ProtocolLibrary;
+import com.comphenix.protocol.events.ListenerPriority;
+import com.comphenix.protocol.events.PacketAdapter;
+import com.comphenix.protocol.events.PacketEvent;
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.managers.SessionManager;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cuts the traffic sent to players who have not logged in yet:
+ * <ul>
+ * <li>players in limbo are hidden from each other, so bots do not track or list each other;</li>
+ * <li>player chat and high-volume entity movement packets are not sent to them;</li>
+ * <li>join and quit messages only go to logged-in players.</li>
+ * </ul>
+ * The packet gate reads {@link SessionManager#isLoggedIn(UUID)}, so it lifts the
+ * moment a player logs in. Visibility changes are queued and applied a few
+ * hundred per tick, so a wave of joins does not turn into one huge tick.
+ *
+ * <p>Bukkit only hides players pair by pair, so n players in limbo cost n(n-1)/2
+ * changes. Changes for a player who quits or logs in before they ran are dropped
+ * rather than applied and undone, and a backlog that keeps growing is logged.</p>
+ */
+public class LimboTrafficGate extends PacketAdapter implements Listener {
+
+    // Rough wire size of each dropped packet type, for the bytes-saved estimate
+    private static final Map<PacketType, Integer> ESTIMATED_SIZES = new HashMap<>();
+
+    static {
+        ESTIMATED_SIZES.put(PacketType.Play.Server.CHAT, 256);
+        ESTIMATED_SIZES.put(PacketType.Play.Server.DISGUISED_CHAT, 128);
+        // Deltas only - spawn, metadata and absolute teleports still go through, and the
+        // tracked entities are respawned at their current positions when the gate lifts
+        ESTIMATED_SIZES.put(PacketType.Play.Server.REL_ENTITY_MOVE, 12);
+        ESTIMATED_SIZES.put(PacketType.Play.Server.REL_ENTITY_MOVE_LOOK, 14);
+        ESTIMATED_SIZES.put(PacketType.Play.Server.ENTITY_LOOK, 8);
+        ESTIMATED_SIZES.put(PacketType.Play.Server.ENTITY_HEAD_ROTATION, 6);
+        ESTIMATED_SIZES.put(PacketType.Play.Server.ENTITY_VELOCITY, 12);
+        ESTIMATED_SIZES.put(PacketType.Play.Server.ANIMATION, 6);
+    }
+
+    private static final int MAX_DEPARTED = 10_000;
+    // Horizontal reach of the resync; beyond any entity tracking range the server is likely to use
+    private static final double RESYNC_RANGE = 128;
+
+    private final PowerAuth plugin;
+    private final SessionManager sessionManager;
+    private final int changesPerTick;
+
+    // Unauthenticated players currently online, in join order (main thread only)
+    private final Map<UUID, Player> occupants = new LinkedHashMap<>();
+    private final Queue<VisibilityChange> visibilityChanges = new ArrayDeque<>();
+    // Players who quit while in limbo; logged-in players may still hold hidden entries for them.
+    // Bounded, so a bot wave that never comes back does not pile up here
+    private final Set<UUID> departed = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+            return size() > MAX_DEPARTED;
+        }
+    });
+    private long lastBacklogWarning;
+    private BukkitTask task;
+
+    private final LongAdder packetsSaved = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder messagesSaved = new LongAdder();
+
+    public LimboTrafficGate(PowerAuth plugin, SessionManager sessionManager) {
+        super(plugin, ListenerPriority.HIGHEST, ESTIMATED_SIZES.keySet());
+        this.plugin = plugin;
+        this.sessionManager = sessionManager;
+        this.changesPerTick = Math.max(1, plugin.getConfig().getInt("advanced.visibility-changes-per-tick", 200));
+    }
+
+    public void register() {
+        ProtocolLibrary.getProtocolManager().addPacketListener(this);
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        sessionManager.onLogin(uuid -> plugin.getMainThreadExecutor().execute(() -> lift(uuid)));
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::applyVisibilityChanges, 1L, 1L);
+    }
+
+    @Override
+    public void onPacketSending(PacketEvent event) {
+        Player player = event.getPlayer();
+        if (player == null || sessionManager.isLoggedIn(player.getUniqueId())) {
+            return;
+        }
+
+        event.setCancelled(true);
+        packetsSaved.increment();
+        bytesSaved.add(ESTIMATED_SIZES.getOrDefault(event.getPacketType(), 0));
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onJoinMessage(PlayerJoinEvent event) {
+        event.setJoinMessage(sendToLoggedIn(event.getJoinMessage(), event.getPlayer()));
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onQuitMessage(PlayerQuitEvent event) {
+        event.setQuitMessage(sendToLoggedIn(event.getQuitMessage(), event.getPlayer()));
+    }
+
+    // After AuthListener, which may already have resumed the player's session
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        boolean loggedIn = sessionManager.isLoggedIn(player.getUniqueId());
+        if (departed.remove(player.getUniqueId())) {
+            // Undo what the last stay left behind, now that there is a player to show
+            for (Player other : plugin.getServer().getOnlinePlayers()) {
+                if (other != player && (loggedIn || !occupants.containsKey(other.getUniqueId()))) {
+                    visibilityChanges.add(new VisibilityChange(player, other, true));
+                }
+            }
+        }
+        if (loggedIn) {
+            return;
+        }
+
+        for (Player other : occupants.values()) {
+            visibilityChanges.add(new VisibilityChange(player, other, false));
+        }
+        occupants.put(player.getUniqueId(), player);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+
+        // Showing a player who has left would list them again on the others' clients, so
+        // the hidden entries the others hold are cleared when the player next joins
+        UUID uuid = player.getUniqueId();
+        if (occupants.remove(uuid) != null) {
+            visibilityChanges.removeIf(change -> change.involves(uuid));
+            departed.add(uuid);
+        }
+    }
+
+    private void lift(UUID uuid) {
+        Player player = occupants.remove(uuid);
+        if (player == null) {
+            return;
+        }
+        // Hides that have not run yet would only be undone again
+        visibilityChanges.removeIf(change -> !change.show && change.involves(uuid));
+        for (Player other : occupants.values()) {
+            visibilityChanges.add(new VisibilityChange(player, other, true));
+        }
+        if (player.isOnline()) {
+            resyncEntities(player);
+        }
+    }
+
+    /**
+     * The movement deltas dropped while the player was in limbo left their
+     * client's copy of nearby entities where it last saw them. Hiding and showing
+     * an entity again untracks and respawns it, at its current position.
+     * Entities the player cannot see are skipped, so nothing hidden is revealed.
+     */
+    private void resyncEntities(Player player) {
+        int height = player.getWorld().getMaxHeight() - player.getWorld().getMinHeight();
+        for (Entity entity : player.getNearbyEntities(RESYNC_RANGE, height, RESYNC_RANGE)) {
+            if (player.canSee(entity)) {
+                player.hideEntity(plugin, entity);
+                player.showEntity(plugin, entity);
+            }
+        }
+    }
+
+    /**
+     * Deliver a join/quit message to logged-in players and the console only
+     *
+     * @return null, to stop the server broadcasting it to everyone
+     */
+    private String sendToLoggedIn(String message, Player subject) {
+        if (message == null || message.isEmpty()) {
+            return message;
+        }
+
+        plugin.getServer().getConsoleSender().sendMessage(message);
+        for (Player online : plugin.getServer().getOnlinePlayers()) {
+            if (online != subject && sessionManager.isLoggedIn(online.getUniqueId())) {
+                online.sendMessage(message);
+            } else if (online != subject) {
+                messagesSaved.increment();
+            }
+        }
+        return null;
+    }
+
+    private void applyVisibilityChanges() {
+        warnOnBacklog();
+        for (int i = 0; i < changesPerTick; i++) {
+            VisibilityChange change = visibilityChanges.poll();
+            if (change == null) {
+                return;
+            }
+            change.apply();
+        }
+    }
+
+    // More than a minute of queued work means limbo is filling faster than the queue drains
+    private void warnOnBacklog() {
+        int pending = visibilityChanges.size();
+        long now = System.currentTimeMillis();
+        if (pending > changesPerTick * 20 * 60 && now - lastBacklogWarning > TimeUnit.MINUTES.toMillis(1)) {
+            lastBacklogWarning = now;
+            plugin.getLogger().warning(pending + " visibility changes are waiting for " + occupants.size()
+                    + " players in limbo; raise advanced.visibility-changes-per-tick if this keeps growing");
+        }
+    }
+
+    public long getPacketsSaved() {
+        return packetsSaved.sum();
+    }
+
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    public long getMessagesSaved() {
+        return messagesSaved.sum();
+    }
+
+    public int getPendingVisibilityChanges() {
+        return visibilityChanges.size();
+    }
+
+    public void close() {
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private final class VisibilityChange {
+        private final Player a;
+        private final Player b;
+        private final boolean show;
+
+        VisibilityChange(Player a, Player b, boolean show) {
+            this.a = a;
+            this.b = b;
+            this.show = show;
+        }
+
+        boolean involves(UUID uuid) {
+            return a.getUniqueId().equals(uuid) || b.getUniqueId().equals(uuid);
+        }
+
+        void apply() {
+            // Either may have quit while this waited; touching them then would leave ghost tab entries
+            if (!a.isOnline() || !b.isOnline()) {
+                return;
+            }
+            if (show) {
+                a.showPlayer(plugin, b);
+                b.showPlayer(plugin, a);
+            } else {
+                a.hidePlayer(plugin, b);
+                b.hidePlayer(plugin, a);
+            }
+        }
+    }
+}
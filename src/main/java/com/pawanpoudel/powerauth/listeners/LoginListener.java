@@ -1,5 +1,6 @@
 package com.pawanpoudel.powerauth.listeners;
 
+import com.comphenix.protocol.AsynchronousManager;
 import com.comphenix.protocol.PacketType;
 import com.comphenix.protocol.ProtocolLibrary;
 import com.comphenix.protocol.events.ListenerPriority;
@@ -7,159 +8,241 @@ import com.comphenix.protocol.events.PacketAdapter;
 import com.comphenix.protocol.events.PacketContainer;
 import com.comphenix.protocol.events.PacketEvent;
 import com.comphenix.protocol.wrappers.WrappedGameProfile;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.managers.HandshakeTable;
+import com.pawanpoudel.powerauth.managers.PremiumHandshake;
 import com.pawanpoudel.powerauth.managers.PremiumManager;
+import com.pawanpoudel.powerauth.metrics.Counter;
+import com.pawanpoudel.powerauth.tracing.LoginPhase;
+import com.pawanpoudel.powerauth.tracing.LoginPhaseEvent;
+import com.pawanpoudel.powerauth.tracing.LoginTracer;
 import com.pawanpoudel.powerauth.utils.EncryptionUtil;
 
 import javax.crypto.SecretKey;
-import java.net.URL;
+import java.net.InetSocketAddress;
 import java.security.PublicKey;
 import java.util.Arrays;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Premium login flow. Both handlers run as ProtocolLib async listeners: the
+ * packet is held with a processing delay while Mojang is queried, and the
+ * continuation releases it, so no network or packet thread waits on HTTP.
+ */
 public class LoginListener {
 
     private final PowerAuth plugin;
     private final PremiumManager premiumManager;
-    private final ConcurrentHashMap<String, byte[]> verifyTokens = new ConcurrentHashMap<>();
+    private final AsynchronousManager asyncManager;
+    private final HandshakeTable handshakes;
+    private final long checkTimeout;
+    private final long sessionTimeout;
+    private final Counter premiumLogins;
+    private final Counter failedPremiumLogins;
+    private final LoginTracer tracer;
 
     public LoginListener(PowerAuth plugin) {
         this.plugin = plugin;
-        this.premiumManager = new PremiumManager();
+        this.premiumManager = new PremiumManager(plugin);
+        this.tracer = plugin.getLoginTracer();
+        this.asyncManager = ProtocolLibrary.getProtocolManager().getAsynchronousManager();
+        this.checkTimeout = plugin.getConfig().getLong("authentication.premium.check-timeout", 3);
+        this.sessionTimeout = plugin.getConfig().getLong("authentication.premium.session-timeout", 5);
+        this.premiumLogins = plugin.getMetrics().counter("powerauth_premium_logins_total",
+                "Premium players verified with Mojang and logged in");
+        this.failedPremiumLogins = plugin.getMetrics().counter("powerauth_premium_login_failures_total",
+                "Premium handshakes that ended in a kick");
+        this.handshakes = new HandshakeTable(
+                TimeUnit.SECONDS.toMillis(plugin.getConfig().getLong("authentication.premium.handshake-timeout", 30)),
+                plugin.getConfig().getInt("authentication.premium.max-pending-handshakes", 1000));
+
+        // Evict handshakes whose client never answered the encryption request
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, handshakes::expire, 20L, 20L);
 
         // 1. Intercept Login Start - Check if premium and send encryption request
-        ProtocolLibrary.getProtocolManager()
-                .addPacketListener(new PacketAdapter(plugin, ListenerPriority.NORMAL, PacketType.Login.Client.START) {
+        asyncManager.registerAsyncHandler(
+                new PacketAdapter(plugin, ListenerPriority.NORMAL, PacketType.Login.Client.START) {
                     @Override
                     public void onPacketReceiving(PacketEvent event) {
                         if (event.isCancelled())
                             return;
 
-                        String playerName = event.getPacket().getGameProfiles().read(0).getName();
-
-                        try {
-                            // Check if player is premium (blocking with timeout to prevent race condition)
-                            UUID premiumUUID = premiumManager.getPremiumUUID(playerName)
-                                    .get(3, java.util.concurrent.TimeUnit.SECONDS);
-
-                            if (premiumUUID != null) {
-                                // Player is premium - initiate encryption
-                                byte[] verifyToken = EncryptionUtil.generateVerifyToken();
-                                verifyTokens.put(playerName, verifyToken);
-
-                                PacketContainer encryptionRequest = ProtocolLibrary.getProtocolManager()
-                                        .createPacket(PacketType.Login.Server.ENCRYPTION_BEGIN);
-                                encryptionRequest.getStrings().write(0, ""); // Server ID (empty string)
-                                encryptionRequest.getByteArrays().write(0,
-                                        EncryptionUtil.getKeyPair().getPublic().getEncoded());
-                                encryptionRequest.getByteArrays().write(1, verifyToken);
-
-                                ProtocolLibrary.getProtocolManager().sendServerPacket(event.getPlayer(),
-                                        encryptionRequest);
-                                event.setCancelled(true); // Cancel normal offline login
-                            }
-                            // If not premium, let it pass through to normal offline login
-                        } catch (java.util.concurrent.TimeoutException e) {
-                            // Timeout - assume offline player
-                            plugin.getLogger()
-                                    .warning("Premium check timeout for " + playerName + ", treating as offline");
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
+                        onLoginStart(event);
                     }
-                });
+                }).start();
 
         // 2. Intercept Encryption Response - Verify and authenticate premium players
-        ProtocolLibrary.getProtocolManager().addPacketListener(
+        asyncManager.registerAsyncHandler(
                 new PacketAdapter(plugin, ListenerPriority.NORMAL, PacketType.Login.Client.ENCRYPTION_BEGIN) {
                     @Override
                     public void onPacketReceiving(PacketEvent event) {
                         if (event.isCancelled())
                             return;
 
-                        String foundPlayer = null;
-                        for (String playerName : verifyTokens.keySet()) {
-                            if (event.getPlayer().getName().equals(playerName)) {
-                                foundPlayer = playerName;
-                                break;
-                            }
+                        onEncryptionResponse(event);
+                    }
+                }).start();
+    }
+
+    private void onLoginStart(PacketEvent event) {
+        String playerName = event.getPacket().getGameProfiles().read(0).getName();
+        InetSocketAddress connection = event.getPlayer().getAddress();
+        PremiumHandshake handshake = new PremiumHandshake(playerName, tracer.start(null, playerName, "premium"));
+
+        // Hold the packet until the premium check completes
+        event.getAsyncMarker().incrementProcessingDelay();
+
+        LoginPhaseEvent premiumCheck = LoginPhaseEvent.start(LoginPhase.PREMIUM_CHECK, null, playerName);
+        premiumManager.getPremiumUUID(playerName)
+                .completeOnTimeout(null, checkTimeout, TimeUnit.SECONDS)
+                .whenComplete((premiumUUID, error) -> {
+                    premiumCheck.end(error == null);
+                    try {
+                        // If not premium (or the check timed out), let it pass through to normal offline login
+                        if (error != null || premiumUUID == null || connection == null) {
+                            return;
+                        }
+
+                        // Player is premium - initiate encryption
+                        handshake.getTrace().setUuid(premiumUUID);
+                        if (!handshakes.register(connection, handshake)) {
+                            event.getPlayer().kickPlayer("§cToo many pending logins, please try again.");
+                            event.setCancelled(true);
+                            return;
                         }
+                        byte[] verifyToken = EncryptionUtil.generateVerifyToken();
+                        handshake.encryptionRequested(verifyToken);
+
+                        PacketContainer encryptionRequest = ProtocolLibrary.getProtocolManager()
+                                .createPacket(PacketType.Login.Server.ENCRYPTION_BEGIN);
+                        encryptionRequest.getStrings().write(0, ""); // Server ID (empty string)
+                        encryptionRequest.getByteArrays().write(0,
+                                EncryptionUtil.getKeyPair().getPublic().getEncoded());
+                        encryptionRequest.getByteArrays().write(1, verifyToken);
+
+                        ProtocolLibrary.getProtocolManager().sendServerPacket(event.getPlayer(), encryptionRequest);
+                        event.setCancelled(true); // Cancel normal offline login
+                    } catch (Exception e) {
+                        handshakes.abandon(connection, handshake);
+                        e.printStackTrace();
+                    } finally {
+                        asyncManager.signalPacketTransmission(event);
+                    }
+                });
+    }
 
-                        if (foundPlayer == null) {
-                            event.getPlayer().kickPlayer("§cInvalid encryption response.");
+    private void onEncryptionResponse(PacketEvent event) {
+        InetSocketAddress connection = event.getPlayer().getAddress();
+        PremiumHandshake handshake = connection != null ? handshakes.get(connection) : null;
+
+        if (handshake == null || !handshake.transition(PremiumHandshake.State.ENCRYPTION_REQUEST_SENT,
+                PremiumHandshake.State.VERIFYING)) {
+            event.getPlayer().kickPlayer("§cInvalid encryption response.");
+            return;
+        }
+
+        String serverId = computeServerId(event, connection, handshake);
+        if (serverId == null) {
+            return;
+        }
+
+        // Hold the packet until Mojang answers
+        event.getAsyncMarker().incrementProcessingDelay();
+
+        String playerName = handshake.getUsername();
+        LoginPhaseEvent sessionVerify = LoginPhaseEvent.start(LoginPhase.SESSION_VERIFY, null, playerName);
+        premiumManager.verifySession(playerName, serverId)
+                .completeOnTimeout(null, sessionTimeout, TimeUnit.SECONDS)
+                .whenComplete((uuid, error) -> {
+                    sessionVerify.end(error == null && uuid != null);
+                    try {
+                        if (error != null || uuid == null) {
+                            // Verification failed
+                            fail(event, connection, handshake, "§cFailed to verify session with Mojang.");
                             return;
                         }
 
-                        try {
-                            PacketContainer packet = event.getPacket();
-                            byte[] sharedSecretEncrypted = packet.getByteArrays().read(0);
-                            byte[] verifyTokenEncrypted = packet.getByteArrays().read(1);
-
-                            PublicKey publicKey = EncryptionUtil.getPublicKey();
-                            SecretKey sharedSecret = EncryptionUtil.decryptSharedSecret(publicKey,
-                                    sharedSecretEncrypted);
-                            byte[] verifyToken = EncryptionUtil.decryptVerifyToken(publicKey, verifyTokenEncrypted);
-
-                            if (sharedSecret == null || verifyToken == null) {
-                                event.getPlayer().kickPlayer("§cEncryption failed.");
-                                return;
-                            }
-
-                            if (!Arrays.equals(verifyToken, verifyTokens.get(foundPlayer))) {
-                                event.getPlayer().kickPlayer("§cVerification token mismatch.");
-                                return;
-                            }
-
-                            // Verify with Mojang Session Server
-                            // We must compute the server hash exactly as the client did.
-                            String serverId = EncryptionUtil.getServerIdHash("", publicKey, sharedSecret);
-                            if (serverId == null) {
-                                event.getPlayer().kickPlayer("§cFailed to compute server hash.");
-                                return;
-                            }
-
-                            String authUrl = "https://sessionserver.mojang.com/session/minecraft/hasJoined?username="
-                                    + foundPlayer + "&serverId=" + serverId;
-
-                            URL url = new URL(authUrl);
-                            java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-                            conn.setConnectTimeout(5000);
-                            conn.setReadTimeout(5000);
-
-                            java.util.Scanner s = new java.util.Scanner(conn.getInputStream()).useDelimiter("\\A");
-                            String result = s.hasNext() ? s.next() : "";
-                            s.close();
-
-                            if (result.contains("id")) {
-                                JsonObject json = new JsonParser().parse(result).getAsJsonObject();
-                                String id = json.get("id").getAsString();
-                                UUID uuid = UUID.fromString(
-                                        id.replaceFirst("(\\w{8})(\\w{4})(\\w{4})(\\w{4})(\\w{12})", "$1-$2-$3-$4-$5"));
-
-                                // IMPORTANT: We must verify the UUID matches the one we expect (or update it)
-                                // The session server returns the real UUID.
-
-                                PacketContainer success = ProtocolLibrary.getProtocolManager()
-                                        .createPacket(PacketType.Login.Server.SUCCESS);
-                                success.getGameProfiles().write(0, new WrappedGameProfile(uuid, foundPlayer));
-                                ProtocolLibrary.getProtocolManager().sendServerPacket(event.getPlayer(), success);
-
-                                LoginListener.this.plugin.getSessionManager().login(uuid);
-                                LoginListener.this.plugin.getDatabaseManager().setPremium(uuid, true);
-
-                                event.setCancelled(true);
-                                verifyTokens.remove(foundPlayer);
-                            } else {
-                                // Verification failed
-                                event.getPlayer().kickPlayer("§cFailed to verify session with Mojang.");
-                            }
-                        } catch (Exception e) {
-                            e.printStackTrace();
+                        // The handshake may have expired while Mojang was answering
+                        if (!handshake.transition(PremiumHandshake.State.VERIFYING, PremiumHandshake.State.SUCCESS)) {
+                            fail(event, connection, handshake, "§cLogin timed out.");
+                            return;
                         }
+
+                        // IMPORTANT: The session server returns the real UUID.
+                        PacketContainer success = ProtocolLibrary.getProtocolManager()
+                                .createPacket(PacketType.Login.Server.SUCCESS);
+                        success.getGameProfiles().write(0, new WrappedGameProfile(uuid, playerName));
+                        ProtocolLibrary.getProtocolManager().sendServerPacket(event.getPlayer(), success);
+
+                        plugin.getSessionManager().login(uuid);
+                        plugin.getDatabaseManager().setPremiumAsync(uuid, true)
+                                .thenRun(() -> plugin.getAccountManager().remove(uuid));
+
+                        handshakes.complete(connection, handshake);
+                        premiumLogins.increment();
+                        handshake.getTrace().setUuid(uuid);
+                        tracer.finish(handshake.getTrace(), "logged in");
+                        event.setCancelled(true);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        fail(event, connection, handshake, "§cFailed to verify session with Mojang.");
+                    } finally {
+                        asyncManager.signalPacketTransmission(event);
                     }
                 });
     }
+
+    /**
+     * Decrypt the client's answer and compute the server id hash it sent to Mojang
+     *
+     * @return the server id, or null if the player was kicked
+     */
+    private String computeServerId(PacketEvent event, InetSocketAddress connection, PremiumHandshake handshake) {
+        LoginPhaseEvent encryption = LoginPhaseEvent.start(LoginPhase.ENCRYPTION, null, handshake.getUsername());
+        String serverId = null;
+        try {
+            PacketContainer packet = event.getPacket();
+            byte[] sharedSecretEncrypted = packet.getByteArrays().read(0);
+            byte[] verifyTokenEncrypted = packet.getByteArrays().read(1);
+
+            PublicKey publicKey = EncryptionUtil.getPublicKey();
+            SecretKey sharedSecret = EncryptionUtil.decryptSharedSecret(publicKey, sharedSecretEncrypted);
+            byte[] verifyToken = EncryptionUtil.decryptVerifyToken(publicKey, verifyTokenEncrypted);
+
+            if (sharedSecret == null || verifyToken == null) {
+                fail(event, connection, handshake, "§cEncryption failed.");
+                return null;
+            }
+
+            if (!Arrays.equals(verifyToken, handshake.getVerifyToken())) {
+                fail(event, connection, handshake, "§cVerification token mismatch.");
+                return null;
+            }
+
+            // We must compute the server hash exactly as the client did.
+            serverId = EncryptionUtil.getServerIdHash("", publicKey, sharedSecret);
+            if (serverId == null) {
+                fail(event, connection, handshake, "§cFailed to compute server hash.");
+                return null;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail(event, connection, handshake, "§cEncryption failed.");
+            return null;
+        } finally {
+            encryption.end(serverId != null);
+        }
+        return serverId;
+    }
+
+    private void fail(PacketEvent event, InetSocketAddress connection, PremiumHandshake handshake, String reason) {
+        handshakes.abandon(connection, handshake);
+        failedPremiumLogins.increment();
+        tracer.finish(handshake.getTrace(), "kicked");
+        event.getPlayer().kickPlayer(reason);
+    }
+
+    public HandshakeTable getHandshakeTable() {
+        return handshakes;
+    }
 }
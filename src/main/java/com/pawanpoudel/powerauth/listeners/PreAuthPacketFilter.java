@@ -0,0 +1,234 @@
+package com.pawanpoudel.powerauth.listeners;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.protocol.ProtocolLibrary;
+import com.comphenix.protocol.events.ListenerPriority;
+import com.comphenix.protocol.events.PacketAdapter;
+import com.comphenix.protocol.events.PacketContainer;
+import com.comphenix.protocol.events.PacketEvent;
+import com.comphenix.protocol.reflect.StructureModifier;
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.managers.SessionManager;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gate for gameplay packets from players who have not logged in yet. The
+ * packets are handled on the network thread, before the server turns them into
+ * Bukkit events, so an idle bot costs one set lookup per packet instead of an
+ * event allocation and a cancellation. The Bukkit listeners in AuthListener
+ * stay in place as a fallback.
+ * <p>
+ * Only the gameplay packet types below are intercepted; of those, only the ones
+ * the policy allows reach the server. Protocol packets (keep-alive, teleport
+ * confirmations, client settings, commands for /login) are never touched.
+ * <p>
+ * The network thread must not read the player's location, so the filter keeps
+ * its own copy of where the server has each player, updated on the main thread
+ * from join, teleport and respawn events and whenever the player is sent back
+ * to limbo. A client that moved anyway has already
+ * moved on its own screen: a few times a second one of its movement packets is
+ * let through, and AuthListener cancels it, which makes the server teleport the
+ * client back. The rest are dropped or pinned to the known position.
+ */
+public class PreAuthPacketFilter extends PacketAdapter implements Listener {
+
+    // How often a moving client gets a movement packet through to be teleported back
+    private static final long CORRECTION_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    // How often a client that keeps chatting is told why nobody hears it
+    private static final long CHAT_WARNING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private enum Action {
+        /** Pass through unchanged */
+        ALLOW,
+        /** Pass through only at the player's position; otherwise correct, pin or drop */
+        MOVE,
+        /** Cancel */
+        DROP
+    }
+
+    private static final Map<PacketType, Action> POLICY = new HashMap<>();
+
+    static {
+        // Looking around is allowed, moving is not
+        POLICY.put(PacketType.Play.Client.LOOK, Action.ALLOW);
+        POLICY.put(PacketType.Play.Client.GROUND, Action.ALLOW);
+        POLICY.put(PacketType.Play.Client.POSITION_LOOK, Action.MOVE);
+        POLICY.put(PacketType.Play.Client.POSITION, Action.MOVE);
+        POLICY.put(PacketType.Play.Client.VEHICLE_MOVE, Action.DROP);
+        POLICY.put(PacketType.Play.Client.STEER_VEHICLE, Action.DROP);
+
+        // Interaction, digging, placing and inventory
+        POLICY.put(PacketType.Play.Client.USE_ENTITY, Action.DROP);
+        POLICY.put(PacketType.Play.Client.USE_ITEM, Action.DROP);
+        POLICY.put(PacketType.Play.Client.USE_ITEM_ON, Action.DROP);
+        POLICY.put(PacketType.Play.Client.BLOCK_PLACE, Action.DROP);
+        POLICY.put(PacketType.Play.Client.BLOCK_DIG, Action.DROP);
+        POLICY.put(PacketType.Play.Client.ARM_ANIMATION, Action.DROP);
+        POLICY.put(PacketType.Play.Client.ENTITY_ACTION, Action.DROP);
+        POLICY.put(PacketType.Play.Client.WINDOW_CLICK, Action.DROP);
+        POLICY.put(PacketType.Play.Client.SET_CREATIVE_SLOT, Action.DROP);
+        POLICY.put(PacketType.Play.Client.PICK_ITEM, Action.DROP);
+        // HELD_ITEM_SLOT is left alone: dropping it leaves the client and server on different hotbar slots
+
+        // Chat (commands travel in their own packet and are checked by AuthListener)
+        POLICY.put(PacketType.Play.Client.CHAT, Action.DROP);
+    }
+
+    private final PowerAuth plugin;
+    private final SessionManager sessionManager;
+    // Where the server has each online player, written on the main thread and read on the network thread
+    private final Map<UUID, Anchor> anchors = new ConcurrentHashMap<>();
+
+    public PreAuthPacketFilter(PowerAuth plugin, SessionManager sessionManager) {
+        super(plugin, ListenerPriority.LOWEST, POLICY.keySet());
+        this.plugin = plugin;
+        this.sessionManager = sessionManager;
+    }
+
+    /**
+     * Start filtering, and tracking positions for it
+     */
+    public void register() {
+        ProtocolLibrary.getProtocolManager().addPacketListener(this);
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        // An admin may send a logged-in player back to limbo long after their last teleport
+        plugin.getLimboManager().onEnter(player -> anchor(player, player.getLocation()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        anchor(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTeleport(PlayerTeleportEvent event) {
+        anchor(event.getPlayer(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent event) {
+        anchor(event.getPlayer(), event.getRespawnLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        anchors.remove(event.getPlayer().getUniqueId());
+    }
+
+    private void anchor(Player player, Location location) {
+        if (location != null) {
+            anchors.put(player.getUniqueId(), new Anchor(location.getX(), location.getZ()));
+        }
+    }
+
+    @Override
+    public void onPacketReceiving(PacketEvent event) {
+        Player player = event.getPlayer();
+        if (player == null || sessionManager.isLoggedIn(player.getUniqueId())) {
+            return;
+        }
+
+        Action action = POLICY.getOrDefault(event.getPacketType(), Action.ALLOW);
+        switch (action) {
+            case MOVE:
+                move(event, player);
+                break;
+            case DROP:
+                event.setCancelled(true);
+                if (event.getPacketType() == PacketType.Play.Client.CHAT) {
+                    warnChat(player);
+                }
+                break;
+            case ALLOW:
+            default:
+                break;
+        }
+    }
+
+    /**
+     * The chat event never fires for a dropped packet, so tell the player here,
+     * on the main thread and at most once a second however fast they type
+     */
+    private void warnChat(Player player) {
+        Anchor anchor = anchors.get(player.getUniqueId());
+        if (anchor != null && !anchor.claimChatWarning(System.nanoTime())) {
+            return;
+        }
+        plugin.getMainThreadExecutor().execute(() -> {
+            if (player.isOnline()) {
+                player.sendMessage(ChatColor.RED + "You must be logged in to chat!");
+            }
+        });
+    }
+
+    private void move(PacketEvent event, Player player) {
+        Anchor anchor = anchors.get(player.getUniqueId());
+        PacketContainer packet = event.getPacket();
+        StructureModifier<Double> doubles = packet.getDoubles();
+        // Vertical movement is allowed, as in AuthListener.onMove
+        if (anchor == null || anchor.isAt(doubles.read(0), doubles.read(2))) {
+            return;
+        }
+
+        if (anchor.claimCorrection(System.nanoTime())) {
+            return; // AuthListener cancels the move and the server sends the player back
+        }
+        if (event.getPacketType() == PacketType.Play.Client.POSITION) {
+            event.setCancelled(true);
+        } else {
+            // Keep the rotation, pin the position
+            doubles.write(0, anchor.x);
+            doubles.write(2, anchor.z);
+        }
+    }
+
+    private static final class Anchor {
+        private final double x;
+        private final double z;
+        private volatile long lastCorrection = System.nanoTime() - CORRECTION_INTERVAL_NANOS;
+        private volatile long lastChatWarning = System.nanoTime() - CHAT_WARNING_INTERVAL_NANOS;
+
+        Anchor(double x, double z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        boolean isAt(double x, double z) {
+            return x == this.x && z == this.z;
+        }
+
+        /**
+         * @return true if a correction is due; a player's packets arrive on one thread, so no CAS is needed
+         */
+        boolean claimCorrection(long now) {
+            if (now - lastCorrection < CORRECTION_INTERVAL_NANOS) {
+                return false;
+            }
+            lastCorrection = now;
+            return true;
+        }
+
+        boolean claimChatWarning(long now) {
+            if (now - lastChatWarning < CHAT_WARNING_INTERVAL_NANOS) {
+                return false;
+            }
+            lastChatWarning = now;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.pawanpoudel.powerauth.managers;
+
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.database.AccountSnapshot;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the account snapshot of every connecting or online player so the join
+ * and login path never has to query the database again.
+ * A completed future with a null value means the player is not registered.
+ */
+public class AccountManager {
+
+    private final PowerAuth plugin;
+    private final Map<UUID, CompletableFuture<AccountSnapshot>> accounts = new ConcurrentHashMap<>();
+
+    public AccountManager(PowerAuth plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Load the account synchronously. Only call this from an async thread,
+     * e.g. AsyncPlayerPreLoginEvent.
+     */
+    public void prefetch(UUID uuid) {
+        accounts.put(uuid, CompletableFuture.completedFuture(plugin.getDatabaseManager().loadAccount(uuid)));
+    }
+
+    /**
+     * Get the tracked account, loading and tracking it asynchronously if it was not prefetched
+     */
+    public CompletableFuture<AccountSnapshot> load(UUID uuid) {
+        CompletableFuture<AccountSnapshot> account = accounts.computeIfAbsent(uuid,
+                key -> plugin.getDatabaseManager().loadAccountAsync(key));
+        // Outside computeIfAbsent: a load that fails straight away would otherwise remove
+        // from the map while it is still being updated. Only this future is forgotten,
+        // not one that replaced it in the meantime.
+        account.whenComplete((loaded, error) -> {
+            if (error != null) {
+                accounts.remove(uuid, account);
+            }
+        });
+        return account;
+    }
+
+    /**
+     * Get the tracked account, or look it up without tracking it (e.g. offline players)
+     */
+    public CompletableFuture<AccountSnapshot> getAccount(UUID uuid) {
+        CompletableFuture<AccountSnapshot> account = accounts.get(uuid);
+        return account != null ? account : plugin.getDatabaseManager().loadAccountAsync(uuid);
+    }
+
+    /**
+     * Replace the tracked snapshot after a write, if the player is tracked
+     */
+    public void update(UUID uuid, AccountSnapshot account) {
+        accounts.computeIfPresent(uuid, (key, current) -> CompletableFuture.completedFuture(account));
+    }
+
+    /**
+     * Forget the tracked snapshot so the next lookup goes to the database
+     */
+    public void remove(UUID uuid) {
+        accounts.remove(uuid);
+    }
+}
@@ -34,7 +34,24 @@ public class AdminSecurityManager {
         boolean webhookEnabled = plugin.getConfig().getBoolean("security.admin-protection.discord-webhook.enabled",
                 false);
 
-        this.webhook = webhookEnabled ? new DiscordWebhook(webhookUrl) : null;
+        this.webhook = webhookEnabled
+                ? new DiscordWebhook(plugin.getHttpTransport(), webhookUrl,
+                        plugin.getConfig().getInt("security.admin-protection.discord-webhook.queue-size", 100),
+                        plugin.getConfig().getLong("security.admin-protection.discord-webhook.batch-window-ms", 2000))
+                : null;
+    }
+
+    /**
+     * @return the webhook, or null if Discord notifications are disabled
+     */
+    public DiscordWebhook getWebhook() {
+        return webhook;
+    }
+
+    public void close() {
+        if (webhook != null) {
+            webhook.close();
+        }
     }
 
     /**
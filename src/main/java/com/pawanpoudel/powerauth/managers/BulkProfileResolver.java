@@ -0,0 +1,186 @@
+package com.pawanpoudel.powerauth.managers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import com.pawanpoudel.powerauth.utils.HttpTransport;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects profile lookups for a short window and resolves them with Mojang's
+ * bulk endpoint, up to {@link #MAX_BATCH} names per request. During a restart
+ * storm this turns hundreds of GETs into a few dozen POSTs. If the bulk endpoint
+ * itself rejects a request (another 4xx or an unexpected body), its names fall
+ * back to the single-name lookup. When Mojang as a whole is unavailable or rate
+ * limiting us (no response, 429 or 5xx), more requests would only make it worse,
+ * so the batch fails and PremiumManager answers from its cache instead.
+ */
+public class BulkProfileResolver {
+
+    // Mojang rejects bulk requests with more names than this
+    public static final int MAX_BATCH = 10;
+
+    private final HttpTransport transport;
+    private final String endpoint;
+    private final long windowMillis;
+    private final Function<String, CompletableFuture<UUID>> singleLookup;
+    private final Executor windowTimer;
+
+    private List<PendingLookup> pending = new ArrayList<>(MAX_BATCH);
+
+    public BulkProfileResolver(HttpTransport transport, String endpoint, long windowMillis,
+            Function<String, CompletableFuture<UUID>> singleLookup) {
+        this.transport = transport;
+        this.endpoint = endpoint;
+        this.windowMillis = windowMillis;
+        this.singleLookup = singleLookup;
+        this.windowTimer = CompletableFuture.delayedExecutor(windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue a name for the next bulk request
+     *
+     * @return a future completing with the premium UUID, or null if the name is not premium
+     */
+    public CompletableFuture<UUID> resolve(String username) {
+        PendingLookup lookup = new PendingLookup(username);
+        List<PendingLookup> full = null;
+
+        synchronized (this) {
+            pending.add(lookup);
+            if (pending.size() >= MAX_BATCH) {
+                full = drain();
+            } else if (pending.size() == 1) {
+                // First name of a new window - everything arriving before it closes rides along
+                windowTimer.execute(this::flush);
+            }
+        }
+
+        if (full != null) {
+            send(full);
+        }
+        return lookup.result;
+    }
+
+    private void flush() {
+        List<PendingLookup> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return; // Already sent because the batch filled up
+            }
+            batch = drain();
+        }
+        send(batch);
+    }
+
+    private List<PendingLookup> drain() {
+        List<PendingLookup> batch = pending;
+        pending = new ArrayList<>(MAX_BATCH);
+        return batch;
+    }
+
+    private void send(List<PendingLookup> batch) {
+        if (batch.size() == 1) {
+            // Nothing to combine with - the single-name endpoint is cheaper
+            PendingLookup lookup = batch.get(0);
+            forward(singleLookup.apply(lookup.username), lookup);
+            return;
+        }
+
+        transport.postJson(endpoint, toJson(batch)).whenComplete((response, error) -> {
+            if (error != null) {
+                fail(batch, error);
+                return;
+            }
+            int status = response.getStatusCode();
+            if (status == 429 || status >= 500) {
+                fail(batch, new UncheckedIOException(new IOException("Mojang API returned HTTP " + status)));
+                return;
+            }
+            if (status != 200 || !response.getBody().isJsonArray()) {
+                fallback(batch);
+                return;
+            }
+
+            // Names missing from the response are not premium
+            Map<String, UUID> found = parseProfiles(response.getBody().getAsJsonArray());
+            for (PendingLookup lookup : batch) {
+                lookup.result.complete(found.get(lookup.username.toLowerCase(Locale.ROOT)));
+            }
+        });
+    }
+
+    private void fallback(List<PendingLookup> batch) {
+        for (PendingLookup lookup : batch) {
+            forward(singleLookup.apply(lookup.username), lookup);
+        }
+    }
+
+    private static void fail(List<PendingLookup> batch, Throwable error) {
+        for (PendingLookup lookup : batch) {
+            lookup.result.completeExceptionally(error);
+        }
+    }
+
+    private static void forward(CompletableFuture<UUID> source, PendingLookup lookup) {
+        source.whenComplete((uuid, error) -> {
+            if (error != null) {
+                lookup.result.completeExceptionally(error);
+            } else {
+                lookup.result.complete(uuid);
+            }
+        });
+    }
+
+    private static String toJson(List<PendingLookup> batch) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginArray();
+            for (PendingLookup lookup : batch) {
+                writer.value(lookup.username);
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static Map<String, UUID> parseProfiles(JsonArray profiles) {
+        Map<String, UUID> found = new HashMap<>();
+        for (JsonElement element : profiles) {
+            if (!element.isJsonObject()) {
+                continue;
+            }
+            JsonObject profile = element.getAsJsonObject();
+            if (profile.has("id") && profile.has("name")) {
+                found.put(profile.get("name").getAsString().toLowerCase(Locale.ROOT),
+                        PremiumManager.parseUUID(profile.get("id").getAsString()));
+            }
+        }
+        return found;
+    }
+
+    private static final class PendingLookup {
+        private final String username;
+        private final CompletableFuture<UUID> result = new CompletableFuture<>();
+
+        PendingLookup(String username) {
+            this.username = username;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.pawanpoudel.powerauth.managers;
+
+import com.pawanpoudel.powerauth.utils.TimingWheel;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Premium handshakes in progress, keyed by the remote address of the
+ * connection. Handshakes that never get an encryption response (bots, clients
+ * that disconnect) are evicted by a timing wheel, and the table refuses new
+ * handshakes once it holds {@code maxSize} of them.
+ */
+public class HandshakeTable {
+
+    private final Map<InetSocketAddress, PremiumHandshake> handshakes = new ConcurrentHashMap<>();
+    private final TimingWheel<InetSocketAddress> expiry;
+    private final long timeoutMillis;
+    private final int maxSize;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public HandshakeTable(long timeoutMillis, int maxSize) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxSize = maxSize;
+        // One-second ticks; 64 slots cover the usual timeouts in a single turn
+        this.expiry = new TimingWheel<>(64, 1000);
+    }
+
+    /**
+     * Start tracking a handshake
+     *
+     * @return false if the table is full
+     */
+    public boolean register(InetSocketAddress connection, PremiumHandshake handshake) {
+        if (handshakes.size() >= maxSize) {
+            rejected.increment();
+            return false;
+        }
+
+        PremiumHandshake previous = handshakes.put(connection, handshake);
+        if (previous != null && previous.fail()) {
+            abandoned.increment();
+        }
+        expiry.schedule(connection, timeoutMillis);
+        return true;
+    }
+
+    public PremiumHandshake get(InetSocketAddress connection) {
+        return handshakes.get(connection);
+    }
+
+    /**
+     * Remove a handshake that reached SUCCESS
+     */
+    public void complete(InetSocketAddress connection, PremiumHandshake handshake) {
+        if (remove(connection, handshake)) {
+            completed.increment();
+        }
+    }
+
+    /**
+     * Fail and remove a handshake that will not finish
+     */
+    public void abandon(InetSocketAddress connection, PremiumHandshake handshake) {
+        handshake.fail();
+        if (remove(connection, handshake)) {
+            abandoned.increment();
+        }
+    }
+
+    /**
+     * Evict handshakes that ran past the timeout. Called periodically.
+     */
+    public void expire() {
+        expiry.advance(System.currentTimeMillis(), connection -> {
+            PremiumHandshake handshake = handshakes.remove(connection);
+            if (handshake != null) {
+                handshake.fail();
+                expired.increment();
+            }
+        });
+    }
+
+    private boolean remove(InetSocketAddress connection, PremiumHandshake handshake) {
+        if (handshakes.remove(connection, handshake)) {
+            expiry.cancel(connection);
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return handshakes.size();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getAbandoned() {
+        return abandoned.sum();
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
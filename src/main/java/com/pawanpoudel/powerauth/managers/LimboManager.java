@@ -1,22 +1,55 @@
 package com.pawanpoudel.powerauth.managers;
 
 import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.metrics.Histogram;
+import com.pawanpoudel.powerauth.tracing.LoginPhase;
+import com.pawanpoudel.powerauth.tracing.LoginPhaseEvent;
 import org.bukkit.*;
 import org.bukkit.entity.Player;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class LimboManager {
 
+    // Spawn platforms are 5x5
+    private static final int PLATFORM_RADIUS = 2;
+
     private final PowerAuth plugin;
     private World limboWorld;
     private Location limboSpawn;
     private final Map<UUID, Location> previousLocations = new HashMap<>();
 
+    // Spawn cells spaced beyond tracking range, so players in limbo do not see each other
+    private Location[] slotSpawns;
+    private LimboSlotAllocator slotAllocator;
+    private final Map<UUID, Integer> assignedSlots = new HashMap<>();
+
+    // Virtual mode: no limbo world, players wait at an anchor in an existing world
+    private boolean virtual;
+    private Location virtualAnchor;
+    private final Set<UUID> virtualPlayers = new HashSet<>();
+
+    // Called with a player each time they are sent to limbo, after any teleport (main thread only)
+    private final List<Consumer<Player>> enterHooks = new ArrayList<>();
+
+    private final Histogram toLimboTimer;
+    private final Histogram fromLimboTimer;
+
     public LimboManager(PowerAuth plugin) {
         this.plugin = plugin;
+        this.toLimboTimer = plugin.getMetrics().histogram("powerauth_limbo_teleport_in_seconds",
+                "Teleports into the limbo world");
+        this.fromLimboTimer = plugin.getMetrics().histogram("powerauth_limbo_teleport_out_seconds",
+                "Teleports out of the limbo world after login");
         initialize();
     }
 
@@ -26,6 +59,20 @@ public class LimboManager {
             return;
         }
 
+        if (plugin.getConfig().getString("limbo.mode", "world").equalsIgnoreCase("virtual")) {
+            virtualAnchor = loadVirtualAnchor();
+            if (virtualAnchor != null) {
+                virtual = true;
+                plugin.getLogger().info("Using virtual limbo, players will wait at " + virtualAnchor.getWorld().getName()
+                        + " " + virtualAnchor.getBlockX() + ", " + virtualAnchor.getBlockY() + ", "
+                        + virtualAnchor.getBlockZ() + ".");
+                return;
+            }
+            // Leaving players where they joined would show them the real world before they log in
+            plugin.getLogger().warning("limbo.mode is virtual but limbo.virtual-anchor.world is not a loaded world, "
+                    + "using the limbo world instead.");
+        }
+
         String worldName = plugin.getConfig().getString("limbo.world-name", "limbo");
         boolean autoCreate = plugin.getConfig().getBoolean("limbo.auto-create", true);
 
@@ -70,12 +117,89 @@ public class LimboManager {
             float pitch = (float) plugin.getConfig().getDouble("limbo.spawn-location.pitch", 0.0);
 
             limboSpawn = new Location(limboWorld, x, y, z, yaw, pitch);
+            createSlots();
             plugin.getLogger().info("Limbo world initialized successfully!");
         } else {
             plugin.getLogger().warning("Failed to initialize limbo world!");
         }
     }
 
+    private Location loadVirtualAnchor() {
+        String worldName = plugin.getConfig().getString("limbo.virtual-anchor.world", "");
+        World world = worldName.isEmpty() ? null : Bukkit.getWorld(worldName);
+        if (world == null) {
+            return null;
+        }
+
+        double x = plugin.getConfig().getDouble("limbo.virtual-anchor.x", 0.5);
+        double y = plugin.getConfig().getDouble("limbo.virtual-anchor.y", 64.0);
+        double z = plugin.getConfig().getDouble("limbo.virtual-anchor.z", 0.5);
+        float yaw = (float) plugin.getConfig().getDouble("limbo.virtual-anchor.yaw", 0.0);
+        float pitch = (float) plugin.getConfig().getDouble("limbo.virtual-anchor.pitch", 0.0);
+        return new Location(world, x, y, z, yaw, pitch);
+    }
+
+    /**
+     * Lay the spawn cells out on a grid starting at the configured spawn. Each
+     * cell gets a platform and plugin chunk tickets, so its chunks are generated
+     * now and stay loaded instead of being loaded by the first teleport.
+     * <p>
+     * Unless limbo.slots.count is set, there is one cell per
+     * limbo.slots.players-per-cell of the server's player limit, so a full
+     * server's limbo is spread as thinly as configured.
+     */
+    private void createSlots() {
+        int count = plugin.getConfig().getInt("limbo.slots.count", 0);
+        if (count <= 0) {
+            int playersPerCell = Math.max(1, plugin.getConfig().getInt("limbo.slots.players-per-cell", 8));
+            count = (plugin.getServer().getMaxPlayers() + playersPerCell - 1) / playersPerCell;
+        }
+        count = Math.max(1, count);
+        int spacing = Math.max(16, plugin.getConfig().getInt("limbo.slots.spacing", 256));
+        int columns = (int) Math.ceil(Math.sqrt(count));
+
+        slotSpawns = new Location[count];
+        slotAllocator = new LimboSlotAllocator(count);
+
+        for (int slot = 0; slot < count; slot++) {
+            Location spawn = limboSpawn.clone().add((slot % columns) * spacing, 0, (slot / columns) * spacing);
+            slotSpawns[slot] = spawn;
+
+            addChunkTickets(spawn);
+            createPlatform(spawn);
+        }
+
+        plugin.getLogger().info("Prepared " + count + " limbo spawn cells " + spacing + " blocks apart.");
+    }
+
+    /**
+     * Ticket every chunk the platform touches; unless the spawn is near the
+     * middle of a chunk, the 5x5 platform crosses into its neighbours
+     */
+    private void addChunkTickets(Location spawn) {
+        for (int chunkX = (spawn.getBlockX() - PLATFORM_RADIUS) >> 4;
+                chunkX <= (spawn.getBlockX() + PLATFORM_RADIUS) >> 4; chunkX++) {
+            for (int chunkZ = (spawn.getBlockZ() - PLATFORM_RADIUS) >> 4;
+                    chunkZ <= (spawn.getBlockZ() + PLATFORM_RADIUS) >> 4; chunkZ++) {
+                limboWorld.addPluginChunkTicket(chunkX, chunkZ, plugin);
+            }
+        }
+    }
+
+    private void createPlatform(Location spawn) {
+        // Same 5x5 platform as the original spawn, one block under the spawn point
+        int platformY = spawn.getBlockY() - 1;
+        if (limboWorld.getBlockAt(spawn.getBlockX(), platformY, spawn.getBlockZ()).getType() != Material.AIR) {
+            return;
+        }
+        for (int x = -PLATFORM_RADIUS; x <= PLATFORM_RADIUS; x++) {
+            for (int z = -PLATFORM_RADIUS; z <= PLATFORM_RADIUS; z++) {
+                limboWorld.getBlockAt(spawn.getBlockX() + x, platformY, spawn.getBlockZ() + z)
+                        .setType(Material.STONE);
+            }
+        }
+    }
+
     private void createSpawnPlatform() {
         if (limboWorld == null)
             return;
@@ -92,25 +216,61 @@ public class LimboManager {
     }
 
     public boolean isEnabled() {
-        return plugin.getConfig().getBoolean("limbo.enabled", true) && limboWorld != null;
+        return plugin.getConfig().getBoolean("limbo.enabled", true) && (virtual || limboWorld != null);
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Run a hook every time a player is sent to limbo, whether on join or by an
+     * admin, and even when limbo is disabled and they stay where they are
+     */
+    public void onEnter(Consumer<Player> hook) {
+        enterHooks.add(hook);
     }
 
     public void sendToLimbo(Player player) {
-        if (!isEnabled())
+        if (!isEnabled()) {
+            entered(player);
             return;
+        }
 
-        // Store previous location
-        previousLocations.put(player.getUniqueId(), player.getLocation());
+        // Store previous location, unless an earlier trip to limbo already did
+        if (!isInLimbo(player)) {
+            previousLocations.put(player.getUniqueId(), player.getLocation());
+        }
 
-        // Teleport to limbo
-        player.teleport(limboSpawn);
+        // Teleport to the anchor, or to this player's spawn cell
+        Location destination = virtual ? virtualAnchor : slotSpawns[assignSlot(player.getUniqueId())];
+        long start = System.nanoTime();
+        LoginPhaseEvent phase = LoginPhaseEvent.start(LoginPhase.TELEPORT, player.getUniqueId(), player.getName());
+        phase.end(player.teleport(destination));
+        toLimboTimer.recordSince(start);
+        if (virtual) {
+            hold(player);
+        }
         player.sendMessage(ChatColor.YELLOW + "Please authenticate to continue.");
+        entered(player);
+    }
+
+    private void entered(Player player) {
+        for (Consumer<Player> hook : enterHooks) {
+            hook.accept(player);
+        }
     }
 
     public void sendToMainWorld(Player player) {
         if (!isEnabled())
             return;
 
+        // A player who never waited at the anchor is still where they joined
+        if (virtual && !release(player)) {
+            return;
+        }
+        releaseSlot(player.getUniqueId());
+
         String teleportMode = plugin.getConfig().getString("limbo.after-login.teleport-to", "spawn");
         Location destination;
 
@@ -133,7 +293,10 @@ public class LimboManager {
                 break;
         }
 
-        player.teleport(destination);
+        long start = System.nanoTime();
+        LoginPhaseEvent phase = LoginPhaseEvent.start(LoginPhase.TELEPORT, player.getUniqueId(), player.getName());
+        phase.end(player.teleport(destination));
+        fromLimboTimer.recordSince(start);
     }
 
     private Location getMainWorldSpawn() {
@@ -143,9 +306,59 @@ public class LimboManager {
 
     public void cleanup(UUID uuid) {
         previousLocations.remove(uuid);
+        releaseSlot(uuid);
+        virtualPlayers.remove(uuid);
+    }
+
+    /**
+     * Blind a player waiting at the anchor. Movement is already frozen by
+     * PreAuthPacketFilter; blindness is sent to their client only, so the server
+     * never applies a real effect that could outlive a crash.
+     */
+    private void hold(Player player) {
+        if (virtualPlayers.add(player.getUniqueId())) {
+            player.sendPotionEffectChange(player, new PotionEffect(PotionEffectType.BLINDNESS,
+                    PotionEffect.INFINITE_DURATION, 0, false, false, false));
+        }
+    }
+
+    /**
+     * @return whether the player was waiting at the anchor
+     */
+    private boolean release(Player player) {
+        if (!virtualPlayers.remove(player.getUniqueId())) {
+            return false;
+        }
+
+        player.sendPotionEffectChangeRemove(player, PotionEffectType.BLINDNESS);
+        // Put back a real blindness effect the fake one was covering
+        PotionEffect real = player.getPotionEffect(PotionEffectType.BLINDNESS);
+        if (real != null) {
+            player.sendPotionEffectChange(player, real);
+        }
+        return true;
+    }
+
+    private int assignSlot(UUID uuid) {
+        Integer slot = assignedSlots.get(uuid);
+        if (slot == null) {
+            slot = slotAllocator.allocate();
+            assignedSlots.put(uuid, slot);
+        }
+        return slot;
+    }
+
+    private void releaseSlot(UUID uuid) {
+        Integer slot = assignedSlots.remove(uuid);
+        if (slot != null) {
+            slotAllocator.release(slot);
+        }
     }
 
     public boolean isInLimbo(Player player) {
+        if (virtual) {
+            return virtualPlayers.contains(player.getUniqueId());
+        }
         return isEnabled() && player.getWorld().equals(limboWorld);
     }
 
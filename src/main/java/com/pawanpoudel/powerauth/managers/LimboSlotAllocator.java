@@ -0,0 +1,48 @@
+package com.pawanpoudel.powerauth.managers;
+
+/**
+ * Hands out limbo spawn cells so players are spread out instead of stacked on
+ * one platform. Empty cells are kept on a stack; once every cell is taken,
+ * players share cells round-robin. Allocation and release are O(1).
+ * Not thread-safe; only used from the main thread.
+ */
+public class LimboSlotAllocator {
+
+    private final int[] occupancy;
+    private final int[] freeStack;
+    private int freeTop;
+    private int cursor;
+
+    public LimboSlotAllocator(int slots) {
+        this.occupancy = new int[Math.max(1, slots)];
+        this.freeStack = new int[occupancy.length];
+
+        // Push in reverse so slot 0 (the configured spawn) is handed out first
+        for (int slot = occupancy.length - 1; slot >= 0; slot--) {
+            freeStack[freeTop++] = slot;
+        }
+    }
+
+    public int allocate() {
+        int slot;
+        if (freeTop > 0) {
+            slot = freeStack[--freeTop];
+        } else {
+            // Every cell is occupied - share them evenly
+            slot = cursor;
+            cursor = (cursor + 1) % occupancy.length;
+        }
+        occupancy[slot]++;
+        return slot;
+    }
+
+    public void release(int slot) {
+        if (occupancy[slot] > 0 && --occupancy[slot] == 0) {
+            freeStack[freeTop++] = slot;
+        }
+    }
+
+    public int getSlots() {
+        return occupancy.length;
+    }
+}
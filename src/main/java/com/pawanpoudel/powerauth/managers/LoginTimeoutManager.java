@@ -0,0 +1,124 @@
+package com.pawanpoudel.powerauth.managers;
+
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.utils.TimingWheel;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces security.login-timeout. Every player who joins without being logged
+ * in gets a deadline on one shared timing wheel; logging in cancels it, and an
+ * admin invalidating an online player's session starts a new one. A single
+ * task advances the wheel each tick and kicks at most {@code kicksPerTick}
+ * expired players per tick, so a bot wave timing out together is spread over
+ * several ticks instead of stalling one.
+ */
+public class LoginTimeoutManager {
+
+    // 50 ms slots match server ticks; 2048 of them cover ~100 s in one turn of the wheel
+    private static final int WHEEL_SIZE = 2048;
+    private static final long TICK_MILLIS = 50;
+
+    private final PowerAuth plugin;
+    private final SessionManager sessionManager;
+    private final long timeoutMillis;
+    private final int kicksPerTick;
+    private final String kickMessage;
+
+    private final TimingWheel<UUID> deadlines = new TimingWheel<>(WHEEL_SIZE, TICK_MILLIS);
+    // Generation of each player's current deadline; a new schedule or a cancel retires older ones
+    private final Map<UUID, Long> generations = new ConcurrentHashMap<>();
+    private final AtomicLong nextGeneration = new AtomicLong();
+    // Expired but not kicked yet (main thread only)
+    private final Queue<Expiry> expired = new ArrayDeque<>();
+    private BukkitTask task;
+
+    public LoginTimeoutManager(PowerAuth plugin, SessionManager sessionManager) {
+        this.plugin = plugin;
+        this.sessionManager = sessionManager;
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(plugin.getConfig().getLong("security.login-timeout", 60));
+        this.kicksPerTick = Math.max(1, plugin.getConfig().getInt("security.login-timeout-kicks-per-tick", 20));
+        this.kickMessage = ChatColor.translateAlternateColorCodes('&',
+                plugin.getConfig().getString("messages.error.login-timeout", "&cLogin timeout! Please reconnect."));
+
+        if (timeoutMillis <= 0) {
+            return;
+        }
+
+        sessionManager.onLogin(this::cancel);
+        sessionManager.onInvalidate(this::schedule);
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    /**
+     * Start the login countdown for a player who joined unauthenticated
+     */
+    public void schedule(UUID uuid) {
+        if (timeoutMillis > 0) {
+            generations.put(uuid, nextGeneration.incrementAndGet());
+            deadlines.schedule(uuid, timeoutMillis);
+        }
+    }
+
+    public void cancel(UUID uuid) {
+        if (timeoutMillis > 0) {
+            generations.remove(uuid);
+            deadlines.cancel(uuid);
+        }
+    }
+
+    public int getPending() {
+        return deadlines.size() + expired.size();
+    }
+
+    private void tick() {
+        deadlines.advance(System.currentTimeMillis(), uuid -> {
+            Long generation = generations.get(uuid);
+            if (generation != null) {
+                expired.add(new Expiry(uuid, generation));
+            }
+        });
+
+        for (int kicked = 0; kicked < kicksPerTick && !expired.isEmpty(); ) {
+            Expiry expiry = expired.poll();
+            UUID uuid = expiry.uuid;
+
+            // Left, or left and rejoined with a new deadline, after expiring but before their turn came
+            if (!generations.remove(uuid, expiry.generation)) {
+                continue;
+            }
+            Player player = plugin.getServer().getPlayer(uuid);
+            if (player == null || sessionManager.isLoggedIn(uuid)) {
+                continue;
+            }
+
+            player.kickPlayer(kickMessage);
+            kicked++;
+        }
+    }
+
+    public void close() {
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private static final class Expiry {
+        private final UUID uuid;
+        private final long generation;
+
+        Expiry(UUID uuid, long generation) {
+            this.uuid = uuid;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.pawanpoudel.powerauth.managers;
+
+import com.pawanpoudel.powerauth.tracing.LoginTracer;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Progress of one connection through the premium login flow:
+ * START -> ENCRYPTION_REQUEST_SENT -> VERIFYING -> SUCCESS / FAIL
+ */
+public class PremiumHandshake {
+
+    public enum State {
+        START, ENCRYPTION_REQUEST_SENT, VERIFYING, SUCCESS, FAIL
+    }
+
+    private final String username;
+    private final LoginTracer.LoginTrace trace;
+    private final AtomicReference<State> state = new AtomicReference<>(State.START);
+    private volatile byte[] verifyToken;
+
+    public PremiumHandshake(String username, LoginTracer.LoginTrace trace) {
+        this.username = username;
+        this.trace = trace;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public LoginTracer.LoginTrace getTrace() {
+        return trace;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public byte[] getVerifyToken() {
+        return verifyToken;
+    }
+
+    /**
+     * Record the token sent in the encryption request and move to ENCRYPTION_REQUEST_SENT
+     */
+    public boolean encryptionRequested(byte[] verifyToken) {
+        this.verifyToken = verifyToken;
+        return transition(State.START, State.ENCRYPTION_REQUEST_SENT);
+    }
+
+    /**
+     * Move from one state to another. Fails if another thread already moved it,
+     * e.g. a duplicate encryption response.
+     */
+    public boolean transition(State from, State to) {
+        return state.compareAndSet(from, to);
+    }
+
+    /**
+     * Move to FAIL unless the handshake already finished
+     *
+     * @return true if this call failed it
+     */
+    public boolean fail() {
+        State current;
+        do {
+            current = state.get();
+            if (current == State.SUCCESS || current == State.FAIL) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, State.FAIL));
+        return true;
+    }
+
+    public boolean isDone() {
+        State current = state.get();
+        return current == State.SUCCESS || current == State.FAIL;
+    }
+}
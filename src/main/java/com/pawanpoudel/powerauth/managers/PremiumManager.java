@@ -1,50 +1,187 @@
 package com.pawanpoudel.powerauth.managers;
 
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.database.DatabaseManager;
+import com.pawanpoudel.powerauth.metrics.Counter;
+import com.pawanpoudel.powerauth.metrics.Histogram;
+import com.pawanpoudel.powerauth.utils.TinyLfuCache;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class PremiumManager {
 
-    private static final String MOJANG_API_URL = "https://api.mojang.com/users/profiles/minecraft/";
+    private final PowerAuth plugin;
+    private final String mojangApiUrl;
+    private final String sessionServerUrl;
+    // null when bulk lookups are disabled
+    private final BulkProfileResolver bulkResolver;
+    private final long positiveTtlMillis;
+    private final long negativeTtlMillis;
 
+    // Keyed by lower-cased name; expired entries are kept to fall back on when Mojang fails
+    private final TinyLfuCache<String, CachedLookup> lookups;
+    // Concurrent lookups for the same name share one request
+    private final Map<String, CompletableFuture<UUID>> inFlight = new ConcurrentHashMap<>();
+
+    private final Histogram lookupTimer;
+    private final Histogram verifyTimer;
+    private final Counter cacheHits;
+    private final Counter staleAnswers;
+    private final Counter failedLookups;
+
+    public PremiumManager(PowerAuth plugin) {
+        this.plugin = plugin;
+        this.mojangApiUrl = trimSlash(plugin.getConfig().getString("advanced.http.endpoints.mojang-api",
+                "https://api.mojang.com"));
+        this.sessionServerUrl = trimSlash(plugin.getConfig().getString("advanced.http.endpoints.session-server",
+                "https://sessionserver.mojang.com"));
+        this.bulkResolver = plugin.getConfig().getBoolean("authentication.premium.bulk-lookup.enabled", true)
+                ? new BulkProfileResolver(plugin.getHttpTransport(),
+                        plugin.getConfig().getString("advanced.http.endpoints.profile-lookup",
+                                "https://api.minecraftservices.com/minecraft/profile/lookup/bulk/byname"),
+                        plugin.getConfig().getLong("authentication.premium.bulk-lookup.window-ms", 5),
+                        this::fetchFromMojang)
+                : null;
+        this.positiveTtlMillis = TimeUnit.SECONDS.toMillis(
+                plugin.getConfig().getLong("authentication.premium.lookup-cache.positive-ttl", 3600));
+        this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(
+                plugin.getConfig().getLong("authentication.premium.lookup-cache.negative-ttl", 300));
+        this.lookups = new TinyLfuCache<>(plugin.getConfig().getInt("authentication.premium.lookup-cache.size", 1000));
+
+        this.lookupTimer = plugin.getMetrics().histogram("powerauth_premium_lookup_seconds",
+                "Premium name lookups that missed the cache (database, then Mojang)");
+        this.verifyTimer = plugin.getMetrics().histogram("powerauth_session_verify_seconds",
+                "Mojang session server hasJoined checks");
+        this.cacheHits = plugin.getMetrics().counter("powerauth_premium_lookup_cache_hits_total",
+                "Premium name lookups answered from the cache");
+        this.staleAnswers = plugin.getMetrics().counter("powerauth_premium_lookup_stale_total",
+                "Failed premium lookups answered with an expired cache entry");
+        this.failedLookups = plugin.getMetrics().counter("powerauth_premium_lookup_failures_total",
+                "Premium lookups that failed with nothing cached, treating the name as offline");
+    }
+
+    /**
+     * Resolve the premium UUID of a name. Concurrent lookups of the same name share
+     * one request; each caller gets its own copy of the shared future, so a caller
+     * completing it (e.g. with completeOnTimeout) does not answer the others.
+     *
+     * @return a future completing with the premium UUID, or null if the name is not premium
+     */
     public CompletableFuture<UUID> getPremiumUUID(String username) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                URL url = new URL(MOJANG_API_URL + username);
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setConnectTimeout(5000);
-                connection.setReadTimeout(5000);
-
-                if (connection.getResponseCode() == 200) {
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    reader.close();
-
-                    JsonObject json = new JsonParser().parse(response.toString()).getAsJsonObject();
-                    String id = json.get("id").getAsString();
-                    return parseUUID(id);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+        String key = username.toLowerCase(Locale.ROOT);
+
+        CachedLookup cached = lookups.get(key);
+        if (cached != null && !cached.isExpired()) {
+            cacheHits.increment();
+            return CompletableFuture.completedFuture(cached.uuid);
+        }
+
+        CompletableFuture<UUID> result = new CompletableFuture<>();
+        CompletableFuture<UUID> existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) {
+            return existing.copy();
+        }
+
+        lookupTimer.time(lookup(username)).whenComplete((uuid, error) -> {
+            inFlight.remove(key, result);
+
+            if (error == null) {
+                long ttl = uuid != null ? positiveTtlMillis : negativeTtlMillis;
+                lookups.put(key, new CachedLookup(uuid, System.currentTimeMillis() + ttl));
+                result.complete(uuid);
+            } else if (cached != null) {
+                // Mojang is unavailable or rate limiting us - a stale answer beats treating premium players as offline
+                staleAnswers.increment();
+                result.complete(cached.uuid);
+            } else {
+                failedLookups.increment();
+                plugin.getLogger().warning("Premium lookup for " + username + " failed: " + error.getMessage());
+                result.complete(null);
             }
-            return null;
         });
+        return result.copy();
+    }
+
+    private CompletableFuture<UUID> lookup(String username) {
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+        return databaseManager.supplyAsync(() -> databaseManager.findPremiumUUID(username))
+                .thenCompose(stored -> stored != null
+                        ? CompletableFuture.completedFuture(stored)
+                        : resolve(username));
+    }
+
+    private CompletableFuture<UUID> resolve(String username) {
+        return bulkResolver != null ? bulkResolver.resolve(username) : fetchFromMojang(username);
+    }
+
+    private CompletableFuture<UUID> fetchFromMojang(String username) {
+        return plugin.getHttpTransport().getJson(mojangApiUrl + "/users/profiles/minecraft/" + encode(username))
+                .thenApply(response -> {
+                    if (response.getStatusCode() == 200 && response.getBody().isJsonObject()) {
+                        return parseUUID(response.getBody().getAsJsonObject().get("id").getAsString());
+                    }
+
+                    // 204/404 mean the name is not premium; anything else (e.g. 429) is a failed lookup
+                    if (response.getStatusCode() == 204 || response.getStatusCode() == 404) {
+                        return null;
+                    }
+                    throw new UncheckedIOException(
+                            new IOException("Mojang API returned HTTP " + response.getStatusCode()));
+                });
     }
 
-    private UUID parseUUID(String id) {
+    /**
+     * Ask the Mojang session server whether the client joined with this server id
+     *
+     * @return a future completing with the verified UUID, or null if the session is not valid
+     */
+    public CompletableFuture<UUID> verifySession(String username, String serverId) {
+        return verifyTimer.time(plugin.getHttpTransport().getJson(sessionServerUrl
+                + "/session/minecraft/hasJoined?username=" + encode(username) + "&serverId=" + encode(serverId)))
+                .thenApply(response -> {
+                    if (response.getStatusCode() != 200 || !response.getBody().isJsonObject()) {
+                        return null;
+                    }
+                    JsonObject json = response.getBody().getAsJsonObject();
+                    return json.has("id") ? parseUUID(json.get("id").getAsString()) : null;
+                });
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    static UUID parseUUID(String id) {
         return UUID.fromString(id.replaceFirst(
                 "(\\w{8})(\\w{4})(\\w{4})(\\w{4})(\\w{12})", "$1-$2-$3-$4-$5"));
     }
+
+    private static final class CachedLookup {
+        // null = known not to be premium
+        private final UUID uuid;
+        private final long expiresAt;
+
+        CachedLookup(UUID uuid, long expiresAt) {
+            this.uuid = uuid;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
 }
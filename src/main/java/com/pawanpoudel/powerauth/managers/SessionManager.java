@@ -1,22 +1,173 @@
 package com.pawanpoudel.powerauth.managers;
 
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.database.SessionRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+/**
+ * Tracks who is logged in right now, plus the persistent sessions that let a
+ * player who reconnects from the same IP within
+ * authentication.offline.session-timeout skip /login, even across restarts.
+ * <p>
+ * {@link #logout(UUID)} only ends the current connection's login; the session
+ * stays resumable. {@link #invalidate(UUID)} ends both.
+ */
 public class SessionManager {
 
+    private final PowerAuth plugin;
+    private final long timeoutMillis;
+
     private final Set<UUID> loggedInPlayers = ConcurrentHashMap.newKeySet();
+    // Resumable sessions, loaded in bulk at startup so joins never query for them
+    private final Map<UUID, SessionRecord> sessions = new ConcurrentHashMap<>();
+    // Called with the player's UUID whenever they become logged in
+    private final List<Consumer<UUID>> loginHooks = new CopyOnWriteArrayList<>();
+    // Called with the player's UUID when invalidate() logs out a player who is still online
+    private final List<Consumer<UUID>> invalidateHooks = new CopyOnWriteArrayList<>();
+
+    public SessionManager(PowerAuth plugin) {
+        this.plugin = plugin;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(
+                plugin.getConfig().getLong("authentication.offline.session-timeout", 0));
+
+        if (plugin.getConfig().getBoolean("authentication.offline.force-login-after-restart", false)) {
+            return;
+        }
 
+        for (SessionRecord session : plugin.getDatabaseManager().loadSessions(System.currentTimeMillis())) {
+            sessions.put(session.getUuid(), session);
+        }
+        if (!sessions.isEmpty()) {
+            plugin.getLogger().info("Loaded " + sessions.size() + " resumable sessions.");
+        }
+    }
+
+    /**
+     * Mark a player as logged in without a resumable session (premium or forced logins)
+     */
     public void login(UUID uuid) {
-        loggedInPlayers.add(uuid);
+        markLoggedIn(uuid);
+    }
+
+    /**
+     * Mark a player as logged in and issue a session they can resume from this IP
+     */
+    public void login(UUID uuid, String ip) {
+        markLoggedIn(uuid);
+
+        long now = System.currentTimeMillis();
+        SessionRecord session = new SessionRecord(uuid, ip, now, expiresFrom(now));
+        sessions.put(uuid, session);
+        plugin.getDatabaseManager().saveSessionAsync(session);
     }
 
+    /**
+     * Log a joining player back in if they hold a live session for this IP
+     *
+     * @return true if the session was resumed
+     */
+    public boolean resume(UUID uuid, String ip) {
+        SessionRecord session = sessions.get(uuid);
+        long now = System.currentTimeMillis();
+        if (session == null || !session.canResume(ip, now)) {
+            return false;
+        }
+
+        markLoggedIn(uuid);
+        return true;
+    }
+
+    /**
+     * End the login of a player who left. Their session stays resumable and its
+     * timeout now counts from the moment they left.
+     */
     public void logout(UUID uuid) {
-        loggedInPlayers.remove(uuid);
+        if (!loggedInPlayers.remove(uuid)) {
+            return;
+        }
+
+        SessionRecord session = sessions.get(uuid);
+        if (session != null) {
+            SessionRecord refreshed = session.withExpires(expiresFrom(System.currentTimeMillis()));
+            sessions.put(uuid, refreshed);
+            plugin.getDatabaseManager().saveSessionAsync(refreshed);
+        }
+    }
+
+    /**
+     * Log a player out and drop their session, e.g. after a password change or unregister
+     */
+    public void invalidate(UUID uuid) {
+        boolean wasLoggedIn = loggedInPlayers.remove(uuid);
+        if (sessions.remove(uuid) != null) {
+            plugin.getDatabaseManager().deleteSessionAsync(uuid);
+        }
+        if (wasLoggedIn) {
+            for (Consumer<UUID> hook : invalidateHooks) {
+                hook.accept(uuid);
+            }
+        }
+    }
+
+    /**
+     * Run a hook every time a player becomes logged in, by any means
+     */
+    public void onLogin(Consumer<UUID> hook) {
+        loginHooks.add(hook);
+    }
+
+    /**
+     * Run a hook every time {@link #invalidate(UUID)} logs out a player who is
+     * online, and so has to log in again without reconnecting
+     */
+    public void onInvalidate(Consumer<UUID> hook) {
+        invalidateHooks.add(hook);
+    }
+
+    private void markLoggedIn(UUID uuid) {
+        if (loggedInPlayers.add(uuid)) {
+            for (Consumer<UUID> hook : loginHooks) {
+                hook.accept(uuid);
+            }
+        }
     }
 
     public boolean isLoggedIn(UUID uuid) {
         return loggedInPlayers.contains(uuid);
     }
+
+    public int getLoggedInCount() {
+        return loggedInPlayers.size();
+    }
+
+    /**
+     * Players are kicked after plugins are disabled, so refresh the sessions of
+     * everyone still online here, in one batch.
+     */
+    public void close() {
+        long expires = expiresFrom(System.currentTimeMillis());
+        List<SessionRecord> refreshed = new ArrayList<>();
+        for (UUID uuid : loggedInPlayers) {
+            SessionRecord session = sessions.get(uuid);
+            if (session != null) {
+                refreshed.add(session.withExpires(expires));
+            }
+        }
+        loggedInPlayers.clear();
+
+        plugin.getDatabaseManager().saveSessions(refreshed);
+    }
+
+    private long expiresFrom(long now) {
+        return timeoutMillis > 0 ? now + timeoutMillis : SessionRecord.NEVER;
+    }
 }
@@ -0,0 +1,33 @@
+package com.pawanpoudel.powerauth.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A value read from somewhere else (a pool, a cache, a table) whenever metrics are reported
+ */
+public final class Gauge implements Metric {
+
+    private final String name;
+    private final String help;
+    private final LongSupplier value;
+
+    Gauge(String name, String help, LongSupplier value) {
+        this.name = name;
+        this.help = help;
+        this.value = value;
+    }
+
+    public long get() {
+        return value.getAsLong();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getHelp() {
+        return help;
+    }
+}
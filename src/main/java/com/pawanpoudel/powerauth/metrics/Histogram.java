@@ -0,0 +1,182 @@
+package com.pawanpoudel.powerauth.metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency histogram in fixed memory, recorded without locks.
+ * <p>
+ * Durations are kept in microseconds in log-linear buckets, like HdrHistogram:
+ * every power of two is split into {@link #SUB_BUCKETS} equal buckets, so a
+ * percentile is off by at most 1/8 of its value. The range covers 1 microsecond to about
+ * 19 hours in 312 buckets; longer durations land in the last one.
+ * <p>
+ * Quantiles and the maximum describe recent recordings only: buckets are kept
+ * in two windows of {@link #WINDOW_MILLIS}, and when the current one is full it
+ * becomes the previous one and an empty window takes its place. A quantile reads
+ * both, so it covers the last one to two windows. The count and sum never reset,
+ * as Prometheus expects of a summary.
+ */
+public final class Histogram implements Metric {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final String name;
+    private final String help;
+    private final long windowMillis;
+    private final LongSupplier clock;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    private volatile Window current = new Window();
+    private volatile Window previous = new Window();
+    private final AtomicLong windowStart;
+
+    Histogram(String name, String help) {
+        this(name, help, WINDOW_MILLIS, System::currentTimeMillis);
+    }
+
+    Histogram(String name, String help, long windowMillis, LongSupplier clock) {
+        this.name = name;
+        this.help = help;
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+        this.windowStart = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Record the time since a {@link System#nanoTime()} reading
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void record(long duration, TimeUnit unit) {
+        long micros = Math.max(0, unit.toMicros(duration));
+        count.increment();
+        sumMicros.add(micros);
+
+        // A recording racing a rotation may land in the window just retired, which still counts
+        Window window = rotate();
+        window.buckets.incrementAndGet(bucketOf(micros));
+        long max = window.maxMicros.get();
+        while (micros > max && !window.maxMicros.compareAndSet(max, micros)) {
+            max = window.maxMicros.get();
+        }
+    }
+
+    /**
+     * Retire the current window once it is full; whoever wins the CAS does the swap
+     *
+     * @return the window to record into
+     */
+    private Window rotate() {
+        long now = clock.getAsLong();
+        long start = windowStart.get();
+        if (now - start >= windowMillis && windowStart.compareAndSet(start, now)) {
+            // Idle for more than a whole window: the current one is too old to keep as well
+            previous = now - start >= 2 * windowMillis ? new Window() : current;
+            current = new Window();
+        }
+        return current;
+    }
+
+    /**
+     * Record how long a future takes from now until it completes, successfully or not
+     */
+    public <T> CompletableFuture<T> time(CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        return future.whenComplete((result, error) -> recordSince(start));
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Largest value that falls into a bucket
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMicros() {
+        return sumMicros.sum();
+    }
+
+    /**
+     * @return the longest recent recording, over the same windows as the quantiles
+     */
+    public long getMaxMicros() {
+        Window window = rotate();
+        return Math.max(window.maxMicros.get(), previous.maxMicros.get());
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the approximate duration in microseconds below which that share of recent recordings fall
+     */
+    public long getQuantileMicros(double quantile) {
+        Window window = rotate();
+        Window older = previous;
+        long max = Math.max(window.maxMicros.get(), older.maxMicros.get());
+
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = window.buckets.get(i) + older.buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getHelp() {
+        return help;
+    }
+
+    private static final class Window {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong maxMicros = new AtomicLong();
+    }
+}
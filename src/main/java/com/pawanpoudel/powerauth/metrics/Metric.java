@@ -0,0 +1,14 @@
+package com.pawanpoudel.powerauth.metrics;
+
+/**
+ * A named value in the {@link MetricsRegistry}
+ */
+public interface Metric {
+
+    /**
+     * @return the Prometheus-style name, e.g. powerauth_database_task_seconds
+     */
+    String getName();
+
+    String getHelp();
+}
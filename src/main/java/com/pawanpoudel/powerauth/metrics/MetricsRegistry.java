@@ -0,0 +1,62 @@
+package com.pawanpoudel.powerauth.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * All of the plugin's metrics, by name. Asking for a name that already exists
+ * returns the existing metric, so components can look theirs up instead of
+ * passing them around.
+ */
+public class MetricsRegistry {
+
+    // Sorted, so reports list related metrics together
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help) {
+        return register(name, Counter.class, new Counter(name, help));
+    }
+
+    public Histogram histogram(String name, String help) {
+        return register(name, Histogram.class, new Histogram(name, help));
+    }
+
+    /**
+     * Report a value owned by another component; re-registering a name replaces the supplier
+     */
+    public Gauge gauge(String name, String help, LongSupplier value) {
+        Gauge gauge = new Gauge(name, help, value);
+        metrics.put(name, gauge);
+        return gauge;
+    }
+
+    private <M extends Metric> M register(String name, Class<M> type, M metric) {
+        Metric existing = metrics.putIfAbsent(name, metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a "
+                    + existing.getClass().getSimpleName());
+        }
+        return type.cast(existing);
+    }
+
+    public Collection<Metric> getMetrics() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    public <M extends Metric> List<M> getMetrics(Class<M> type) {
+        List<M> matching = new ArrayList<>();
+        for (Metric metric : metrics.values()) {
+            if (type.isInstance(metric)) {
+                matching.add(type.cast(metric));
+            }
+        }
+        return matching;
+    }
+}
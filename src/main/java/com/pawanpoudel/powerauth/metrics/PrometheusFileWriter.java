@@ -0,0 +1,77 @@
+package com.pawanpoudel.powerauth.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * Writes the registry in the Prometheus text format to a file, for the node
+ * exporter's textfile collector. The file is replaced atomically so a scrape
+ * never sees half of it.
+ */
+public class PrometheusFileWriter {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final MetricsRegistry registry;
+    private final Path file;
+
+    public PrometheusFileWriter(MetricsRegistry registry, Path file) {
+        this.registry = registry;
+        this.file = file;
+    }
+
+    public void write() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, format(registry), StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static String format(MetricsRegistry registry) {
+        StringBuilder out = new StringBuilder();
+        for (Metric metric : registry.getMetrics()) {
+            String name = metric.getName();
+            out.append("# HELP ").append(name).append(' ').append(escapeHelp(metric.getHelp())).append('\n');
+
+            if (metric instanceof Counter) {
+                out.append("# TYPE ").append(name).append(" counter\n");
+                out.append(name).append(' ').append(((Counter) metric).get()).append('\n');
+            } else if (metric instanceof Gauge) {
+                out.append("# TYPE ").append(name).append(" gauge\n");
+                out.append(name).append(' ').append(((Gauge) metric).get()).append('\n');
+            } else if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                out.append("# TYPE ").append(name).append(" summary\n");
+                // Quantiles cover the last few minutes, like a client library's maxAge; _sum and _count are lifetime
+                for (double quantile : QUANTILES) {
+                    out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                            .append(seconds(histogram.getQuantileMicros(quantile))).append('\n');
+                }
+                out.append(name).append("_sum ").append(seconds(histogram.getSumMicros())).append('\n');
+                out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,107 @@
+package com.pawanpoudel.powerauth.security;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Argon2id, encoded as {@code $argon2id$v=19$m=<kib>,t=<iterations>,p=<lanes>$<salt>$<hash>}.
+ * The cost is the iteration count; memory and parallelism come from the config.
+ */
+public final class Argon2idHasher implements PasswordHasher {
+
+    private static final String PREFIX = "$argon2id$";
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+
+    private final int memoryKib;
+    private final int iterations;
+    private final int parallelism;
+
+    public Argon2idHasher(int memoryKib, int iterations, int parallelism) {
+        this.memoryKib = Math.max(8 * parallelism, memoryKib);
+        this.iterations = Math.max(1, iterations);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public String getId() {
+        return "argon2id";
+    }
+
+    @Override
+    public int getCost() {
+        return iterations;
+    }
+
+    @Override
+    public PasswordHasher withCost(int cost) {
+        return new Argon2idHasher(memoryKib, cost, parallelism);
+    }
+
+    @Override
+    public PasswordHasher stronger() {
+        return withCost(iterations + 1);
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] salt = HashEncoding.salt(SALT_LENGTH);
+        byte[] hash = derive(password, salt, memoryKib, iterations, parallelism, HASH_LENGTH);
+        return PREFIX + "v=19$m=" + memoryKib + ",t=" + iterations + ",p=" + parallelism
+                + "$" + HashEncoding.encode(salt) + "$" + HashEncoding.encode(hash);
+    }
+
+    @Override
+    public boolean matches(String encoded) {
+        return encoded.startsWith(PREFIX);
+    }
+
+    @Override
+    public boolean verify(String password, String encoded) {
+        try {
+            String[] parts = encoded.split("\\$");
+            String parameters = parts[3];
+            byte[] salt = HashEncoding.decode(parts[4]);
+            byte[] expected = HashEncoding.decode(parts[5]);
+
+            byte[] actual = derive(password, salt, HashEncoding.parameter(parameters, "m"),
+                    HashEncoding.parameter(parameters, "t"), HashEncoding.parameter(parameters, "p"),
+                    expected.length);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            return false; // Malformed hash
+        }
+    }
+
+    @Override
+    public boolean needsRehash(String encoded) {
+        try {
+            String parameters = encoded.split("\\$")[3];
+            return HashEncoding.parameter(parameters, "m") < memoryKib
+                    || HashEncoding.parameter(parameters, "t") < iterations
+                    || HashEncoding.parameter(parameters, "p") != parallelism;
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+
+    private static byte[] derive(String password, byte[] salt, int memoryKib, int iterations, int parallelism,
+            int length) {
+        Argon2Parameters parameters = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+                .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+                .withMemoryAsKB(memoryKib)
+                .withIterations(iterations)
+                .withParallelism(parallelism)
+                .withSalt(salt)
+                .build();
+
+        Argon2BytesGenerator generator = new Argon2BytesGenerator();
+        generator.init(parameters);
+        byte[] hash = new byte[length];
+        generator.generateBytes(password.getBytes(StandardCharsets.UTF_8), hash);
+        return hash;
+    }
+}
@@ -0,0 +1,68 @@
+package com.pawanpoudel.powerauth.security;
+
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+
+/**
+ * bcrypt in the usual {@code $2y$<cost>$...} form. The cost is the log2 round count.
+ */
+public final class BcryptHasher implements PasswordHasher {
+
+    private static final int SALT_LENGTH = 16;
+    private static final int MAX_COST = 31;
+
+    private final int cost;
+
+    public BcryptHasher(int cost) {
+        this.cost = Math.max(4, Math.min(MAX_COST, cost));
+    }
+
+    @Override
+    public String getId() {
+        return "bcrypt";
+    }
+
+    @Override
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public PasswordHasher withCost(int cost) {
+        return new BcryptHasher(cost);
+    }
+
+    @Override
+    public PasswordHasher stronger() {
+        return withCost(cost + 1);
+    }
+
+    @Override
+    public String hash(String password) {
+        return OpenBSDBCrypt.generate("2y", password.toCharArray(), HashEncoding.salt(SALT_LENGTH), cost);
+    }
+
+    @Override
+    public boolean matches(String encoded) {
+        return encoded.startsWith("$2a$") || encoded.startsWith("$2b$") || encoded.startsWith("$2y$");
+    }
+
+    @Override
+    public boolean verify(String password, String encoded) {
+        try {
+            // OpenBSDBCrypt compares in constant time
+            return OpenBSDBCrypt.checkPassword(encoded, password.toCharArray());
+        } catch (IllegalArgumentException | DataLengthException e) {
+            return false; // Malformed hash
+        }
+    }
+
+    @Override
+    public boolean needsRehash(String encoded) {
+        try {
+            return Integer.parseInt(encoded.substring(4, 6)) < cost;
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.pawanpoudel.powerauth.security;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Salt generation and the unpadded Base64 used by PHC-style hash strings
+ */
+final class HashEncoding {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    private HashEncoding() {
+    }
+
+    static byte[] salt(int length) {
+        byte[] salt = new byte[length];
+        RANDOM.nextBytes(salt);
+        return salt;
+    }
+
+    static String encode(byte[] bytes) {
+        return ENCODER.encodeToString(bytes);
+    }
+
+    static byte[] decode(String value) {
+        return DECODER.decode(value);
+    }
+
+    /**
+     * Read an integer parameter such as "t=3" out of "m=65536,t=3,p=1"
+     */
+    static int parameter(String parameters, String name) {
+        for (String parameter : parameters.split(",")) {
+            if (parameter.startsWith(name + "=")) {
+                return Integer.parseInt(parameter.substring(name.length() + 1));
+            }
+        }
+        throw new IllegalArgumentException("Missing hash parameter " + name);
+    }
+}
@@ -0,0 +1,58 @@
+package com.pawanpoudel.powerauth.security;
+
+import com.pawanpoudel.powerauth.utils.PasswordUtils;
+
+/**
+ * The unsalted SHA-256 hex digests older versions stored. Only kept so those
+ * accounts can still log in; every match is rehashed with the configured algorithm.
+ */
+public final class LegacySha256Hasher implements PasswordHasher {
+
+    @Override
+    public String getId() {
+        return "sha256";
+    }
+
+    @Override
+    public int getCost() {
+        return 0;
+    }
+
+    @Override
+    public PasswordHasher withCost(int cost) {
+        return this;
+    }
+
+    @Override
+    public PasswordHasher stronger() {
+        return this;
+    }
+
+    @Override
+    public String hash(String password) {
+        return PasswordUtils.hash(password);
+    }
+
+    @Override
+    public boolean matches(String encoded) {
+        if (encoded.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < encoded.length(); i++) {
+            if (Character.digit(encoded.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean verify(String password, String encoded) {
+        return PasswordUtils.check(password, encoded);
+    }
+
+    @Override
+    public boolean needsRehash(String encoded) {
+        return true;
+    }
+}
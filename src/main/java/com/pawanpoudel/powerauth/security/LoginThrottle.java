@@ -0,0 +1,200 @@
+package com.pawanpoudel.powerauth.security;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts failed logins per account and per IP without locks or per-key objects.
+ * <p>
+ * Keys are hashed into a fixed table of packed counters (a count-min sketch):
+ * each slot holds the window it was last written in plus the failure counts of
+ * that window and the one before. The estimate slides between the two windows,
+ * so a burst of failures fades out over one window instead of resetting all at
+ * once, and stale slots simply read as zero - nothing ever has to be cleaned up.
+ * Collisions can only over-count, never hide failures.
+ * <p>
+ * An attempt is counted when it starts, before the password is checked, so a
+ * burst of concurrent attempts cannot all slip in under the limit. Attempts
+ * that turn out not to be failures are refunded.
+ */
+public class LoginThrottle {
+
+    private static final long[] SEEDS = {0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL};
+    private static final long IP_DOMAIN = 0x165667b19e3779f9L;
+    private static final long COUNT_MASK = 0xffffL;
+
+    // Slot layout: window index (32 bits) | previous window count (16) | current window count (16)
+    private final AtomicLongArray table;
+    // Per account slot: the last window a refused attempt was reported in
+    private final AtomicLongArray reported;
+    private final int mask;
+    private final long windowMillis;
+    private final int maxPerAccount;
+    private final int maxPerIp;
+    private final LongSupplier clock;
+
+    /**
+     * @param tableSize number of counters, rounded up to a power of two (8 bytes each)
+     * @param windowMillis how long failures count against a key
+     */
+    public LoginThrottle(int tableSize, long windowMillis, int maxPerAccount, int maxPerIp) {
+        this(tableSize, windowMillis, maxPerAccount, maxPerIp, System::currentTimeMillis);
+    }
+
+    LoginThrottle(int tableSize, long windowMillis, int maxPerAccount, int maxPerIp, LongSupplier clock) {
+        int size = Integer.highestOneBit(Math.max(64, tableSize - 1) << 1);
+        this.table = new AtomicLongArray(size);
+        this.reported = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.windowMillis = Math.max(1000, windowMillis);
+        this.maxPerAccount = maxPerAccount;
+        this.maxPerIp = maxPerIp;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the account or the address has failed too often recently
+     */
+    public boolean isThrottled(UUID uuid, String ip) {
+        long now = clock.getAsLong();
+        return (maxPerAccount > 0 && estimate(hash(uuid), now) >= maxPerAccount)
+                || (maxPerIp > 0 && estimate(hash(ip), now) >= maxPerIp);
+    }
+
+    /**
+     * Count an attempt against the account and the address unless either is throttled
+     *
+     * @return a token to pass to {@link #refund(UUID, String, long)} if the attempt
+     *         succeeds, or -1 if the attempt is refused
+     */
+    public long tryAttempt(UUID uuid, String ip) {
+        if (isThrottled(uuid, ip)) {
+            return -1;
+        }
+        long now = clock.getAsLong();
+        increment(hash(uuid), now);
+        increment(hash(ip), now);
+        return (now / windowMillis) & 0xffffffffL;
+    }
+
+    /**
+     * Take back an attempt counted by {@link #tryAttempt(UUID, String)} that was
+     * not a failure. An attempt counted more than one window ago has already faded.
+     */
+    public void refund(UUID uuid, String ip, long token) {
+        decrement(hash(uuid), token);
+        decrement(hash(ip), token);
+    }
+
+    /**
+     * Claim the single report of a refused attempt allowed per account and window,
+     * so a client that keeps sending /login while throttled is logged once, not
+     * once per attempt. Accounts that share a slot share the report.
+     *
+     * @return true if the caller should report this refusal
+     */
+    public boolean claimRefusalReport(UUID uuid) {
+        int index = index(hash(uuid), SEEDS[0]);
+        long window = (clock.getAsLong() / windowMillis) & 0xffffffffL;
+        long last = reported.get(index);
+        return last != window && reported.compareAndSet(index, last, window);
+    }
+
+    private double estimate(long keyHash, long now) {
+        long window = now / windowMillis;
+        // How far the current window has progressed; the previous one fades out linearly
+        double remaining = 1.0 - (double) (now % windowMillis) / windowMillis;
+
+        double estimate = Double.MAX_VALUE;
+        for (long seed : SEEDS) {
+            long slot = table.get(index(keyHash, seed));
+            long slotWindow = slot >>> 32;
+            long previous = (slot >>> 16) & COUNT_MASK;
+            long current = slot & COUNT_MASK;
+
+            double value;
+            if (slotWindow == (window & 0xffffffffL)) {
+                value = current + previous * remaining;
+            } else if (slotWindow == ((window - 1) & 0xffffffffL)) {
+                value = current * remaining;
+            } else {
+                value = 0;
+            }
+            estimate = Math.min(estimate, value);
+        }
+        return estimate;
+    }
+
+    private void increment(long keyHash, long now) {
+        long window = (now / windowMillis) & 0xffffffffL;
+
+        for (long seed : SEEDS) {
+            int index = index(keyHash, seed);
+            long slot;
+            long updated;
+            do {
+                slot = table.get(index);
+                long slotWindow = slot >>> 32;
+                long previous = (slot >>> 16) & COUNT_MASK;
+                long current = slot & COUNT_MASK;
+
+                if (slotWindow == window) {
+                    current = Math.min(COUNT_MASK, current + 1);
+                } else if (slotWindow == ((window - 1) & 0xffffffffL)) {
+                    previous = current;
+                    current = 1;
+                } else {
+                    previous = 0;
+                    current = 1;
+                }
+                updated = (window << 32) | (previous << 16) | current;
+            } while (!table.compareAndSet(index, slot, updated));
+        }
+    }
+
+    private void decrement(long keyHash, long window) {
+        for (long seed : SEEDS) {
+            int index = index(keyHash, seed);
+            long slot;
+            long updated;
+            do {
+                slot = table.get(index);
+                long slotWindow = slot >>> 32;
+                long previous = (slot >>> 16) & COUNT_MASK;
+                long current = slot & COUNT_MASK;
+
+                if (slotWindow == window) {
+                    current = Math.max(0, current - 1);
+                } else if (slotWindow == ((window + 1) & 0xffffffffL)) {
+                    // The window rolled over since; the attempt now sits in the previous count
+                    previous = Math.max(0, previous - 1);
+                } else {
+                    break;
+                }
+                updated = (slotWindow << 32) | (previous << 16) | current;
+            } while (!table.compareAndSet(index, slot, updated));
+        }
+    }
+
+    private int index(long keyHash, long seed) {
+        long h = (keyHash + seed) * seed;
+        h ^= h >>> 31;
+        return (int) h & mask;
+    }
+
+    private static long hash(UUID uuid) {
+        return mix(uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits());
+    }
+
+    private static long hash(String ip) {
+        // Separate domain so an IP never shares counters with an account by construction
+        return mix(ip.hashCode() ^ IP_DOMAIN);
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+}
@@ -0,0 +1,43 @@
+package com.pawanpoudel.powerauth.security;
+
+/**
+ * One password hashing algorithm. Encoded hashes are self-describing (they
+ * carry the algorithm, cost and salt), so any hasher can tell whether it
+ * produced a given hash and how to check it.
+ */
+public interface PasswordHasher {
+
+    /**
+     * Algorithm name used in the config, e.g. "argon2id"
+     */
+    String getId();
+
+    /**
+     * The work factor new hashes are created with
+     */
+    int getCost();
+
+    /**
+     * The same algorithm with a different work factor
+     */
+    PasswordHasher withCost(int cost);
+
+    /**
+     * The next, more expensive work factor. Used by startup calibration.
+     */
+    PasswordHasher stronger();
+
+    String hash(String password);
+
+    /**
+     * @return true if the encoded hash was produced by this algorithm
+     */
+    boolean matches(String encoded);
+
+    boolean verify(String password, String encoded);
+
+    /**
+     * @return true if the hash is weaker than what this hasher creates now
+     */
+    boolean needsRehash(String encoded);
+}
@@ -0,0 +1,252 @@
+package com.pawanpoudel.powerauth.security;
+
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.metrics.Counter;
+import com.pawanpoudel.powerauth.metrics.Histogram;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hashes and verifies passwords on a small dedicated pool. The pool and its
+ * queue are bounded: when a burst of logins fills the queue, further requests
+ * fail fast instead of piling up CPU-heavy work or running it on the caller.
+ * Each player may have only one job queued or running, so a single player
+ * spamming commands cannot fill the queue for everyone else.
+ */
+public class PasswordService {
+
+    private final PowerAuth plugin;
+    private final List<PasswordHasher> hashers;
+    private final ThreadPoolExecutor executor;
+    private final Histogram hashTimer;
+    private final Histogram verifyTimer;
+    private final Counter rejected;
+    // Players with a job queued or running
+    private final Set<UUID> busyPlayers = ConcurrentHashMap.newKeySet();
+
+    // Replaced once calibration finishes
+    private volatile PasswordHasher current;
+
+    public PasswordService(PowerAuth plugin) {
+        this.plugin = plugin;
+        FileConfiguration config = plugin.getConfig();
+        this.hashTimer = plugin.getMetrics().histogram("powerauth_password_hash_seconds",
+                "Password hashing, including time queued for a hash thread");
+        this.verifyTimer = plugin.getMetrics().histogram("powerauth_password_verify_seconds",
+                "Password checks, including time queued for a hash thread and any rehash");
+        this.rejected = plugin.getMetrics().counter("powerauth_password_rejected_total",
+                "Hash jobs refused because the hash queue was full");
+
+        PasswordHasher argon2 = new Argon2idHasher(
+                config.getInt("security.password.argon2.memory-kib", 65536),
+                config.getInt("security.password.argon2.min-iterations", 2),
+                config.getInt("security.password.argon2.parallelism", 1));
+        PasswordHasher bcrypt = new BcryptHasher(config.getInt("security.password.bcrypt.min-cost", 10));
+        PasswordHasher pbkdf2 = new Pbkdf2Hasher(config.getInt("security.password.pbkdf2.min-iterations", 210000));
+        this.hashers = Arrays.asList(argon2, bcrypt, pbkdf2, new LegacySha256Hasher());
+
+        String algorithm = config.getString("security.password.algorithm", "argon2id").toLowerCase(Locale.ROOT);
+        this.current = hashers.stream()
+                .filter(hasher -> hasher.getId().equals(algorithm) && hasher.getCost() > 0)
+                .findFirst()
+                .orElseGet(() -> {
+                    plugin.getLogger().warning("Unknown password algorithm '" + algorithm + "', using argon2id.");
+                    return argon2;
+                });
+
+        int threads = config.getInt("security.password.threads", 0);
+        if (threads <= 0) {
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getInt("security.password.queue-size", 64))),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "PowerAuth-Hash-" + threadId.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Raise the cost of the configured algorithm as far as it stays within
+     * security.password.target-millis on this machine. Never goes below the
+     * configured minimum cost. Runs in the background; hashes created before it
+     * finishes use the minimum and are upgraded on the next login.
+     */
+    public void calibrate() {
+        long targetMillis = plugin.getConfig().getLong("security.password.target-millis", 250);
+        if (targetMillis <= 0) {
+            return;
+        }
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            PasswordHasher hasher = current;
+            long millis = measure(hasher);
+
+            // Each step is more expensive, so stop at the first one over the target
+            for (int step = 0; step < 16; step++) {
+                PasswordHasher next = hasher.stronger();
+                if (next.getCost() == hasher.getCost()) {
+                    break;
+                }
+                long nextMillis = measure(next);
+                if (nextMillis > targetMillis) {
+                    break;
+                }
+                hasher = next;
+                millis = nextMillis;
+            }
+
+            current = hasher;
+            plugin.getLogger().info("Password hashing: " + hasher.getId() + " with cost " + hasher.getCost()
+                    + " (" + millis + " ms per hash, target " + targetMillis + " ms)");
+        });
+    }
+
+    private static long measure(PasswordHasher hasher) {
+        hasher.hash("calibration"); // Warm up
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 2; i++) {
+            long start = System.nanoTime();
+            hasher.hash("calibration");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(best);
+    }
+
+    /**
+     * Hash a password with the current algorithm and cost
+     *
+     * @return a future failing with RejectedExecutionException if the pool is saturated
+     */
+    public CompletableFuture<String> hash(String password) {
+        return hash(null, password);
+    }
+
+    /**
+     * Hash a password for a player, at most one job per player at a time
+     *
+     * @return a future failing with {@link AlreadyPendingException} if the player
+     *         already has a job in flight, or RejectedExecutionException if the pool is saturated
+     */
+    public CompletableFuture<String> hash(UUID player, String password) {
+        PasswordHasher hasher = current;
+        return hashTimer.time(submit(player, () -> hasher.hash(password)));
+    }
+
+    /**
+     * Check a password against a stored hash of any supported algorithm. A
+     * matching hash that is weaker than the current settings (including legacy
+     * SHA-256 hashes) comes back with a replacement to store.
+     *
+     * @return a future failing with {@link AlreadyPendingException} if the player
+     *         already has a job in flight, or RejectedExecutionException if the pool is saturated
+     */
+    public CompletableFuture<Verification> verify(UUID player, String password, String encoded) {
+        if (encoded == null) {
+            return CompletableFuture.completedFuture(Verification.MISMATCH);
+        }
+
+        PasswordHasher hasher = current;
+        return verifyTimer.time(submit(player, () -> {
+            PasswordHasher owner = find(encoded);
+            if (owner == null || !owner.verify(password, encoded)) {
+                return Verification.MISMATCH;
+            }
+
+            boolean upgrade = !owner.getId().equals(hasher.getId()) || hasher.needsRehash(encoded);
+            return new Verification(true, upgrade ? hasher.hash(password) : null);
+        }));
+    }
+
+    private <T> CompletableFuture<T> submit(UUID player, Supplier<T> task) {
+        if (player != null && !busyPlayers.add(player)) {
+            return CompletableFuture.failedFuture(new AlreadyPendingException());
+        }
+
+        try {
+            if (player == null) {
+                return CompletableFuture.supplyAsync(task, executor);
+            }
+            // Released inside the job, so the player may submit again as soon as they see the result
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.get();
+                } finally {
+                    busyPlayers.remove(player);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            if (player != null) {
+                busyPlayers.remove(player);
+            }
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private PasswordHasher find(String encoded) {
+        for (PasswordHasher hasher : hashers) {
+            if (hasher.matches(encoded)) {
+                return hasher;
+            }
+        }
+        return null;
+    }
+
+    public PasswordHasher getCurrentHasher() {
+        return current;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The player already has a hash job queued or running
+     */
+    public static final class AlreadyPendingException extends RejectedExecutionException {
+        AlreadyPendingException() {
+            super("A password check is already in progress for this player");
+        }
+    }
+
+    public static final class Verification {
+        private static final Verification MISMATCH = new Verification(false, null);
+
+        private final boolean matched;
+        private final String upgradedHash;
+
+        Verification(boolean matched, String upgradedHash) {
+            this.matched = matched;
+            this.upgradedHash = upgradedHash;
+        }
+
+        public boolean isMatched() {
+            return matched;
+        }
+
+        /**
+         * @return a stronger hash of the same password to store, or null if the stored one is current
+         */
+        public String getUpgradedHash() {
+            return upgradedHash;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.pawanpoudel.powerauth.security;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * PBKDF2-HMAC-SHA256 from the JDK, encoded as {@code $pbkdf2-sha256$i=<iterations>$<salt>$<hash>}.
+ * Needs no extra library, so it is always available.
+ */
+public final class Pbkdf2Hasher implements PasswordHasher {
+
+    private static final String PREFIX = "$pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+
+    private final int iterations;
+
+    public Pbkdf2Hasher(int iterations) {
+        this.iterations = Math.max(1000, iterations);
+    }
+
+    @Override
+    public String getId() {
+        return "pbkdf2";
+    }
+
+    @Override
+    public int getCost() {
+        return iterations;
+    }
+
+    @Override
+    public PasswordHasher withCost(int cost) {
+        return new Pbkdf2Hasher(cost);
+    }
+
+    @Override
+    public PasswordHasher stronger() {
+        return withCost(iterations + iterations / 2);
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] salt = HashEncoding.salt(SALT_LENGTH);
+        byte[] hash = derive(password, salt, iterations, HASH_LENGTH);
+        return PREFIX + "i=" + iterations + "$" + HashEncoding.encode(salt) + "$" + HashEncoding.encode(hash);
+    }
+
+    @Override
+    public boolean matches(String encoded) {
+        return encoded.startsWith(PREFIX);
+    }
+
+    @Override
+    public boolean verify(String password, String encoded) {
+        try {
+            String[] parts = encoded.split("\\$");
+            int rounds = HashEncoding.parameter(parts[2], "i");
+            byte[] salt = HashEncoding.decode(parts[3]);
+            byte[] expected = HashEncoding.decode(parts[4]);
+            return MessageDigest.isEqual(expected, derive(password, salt, rounds, expected.length));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            return false; // Malformed hash
+        }
+    }
+
+    @Override
+    public boolean needsRehash(String encoded) {
+        try {
+            return HashEncoding.parameter(encoded.split("\\$")[2], "i") < iterations;
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations, int length) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, length * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.pawanpoudel.powerauth.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A whole login, from the first packet or command to the player being logged in.
+ * Its {@link LoginPhaseEvent}s share the player UUID and fall inside its duration.
+ */
+@Name("com.pawanpoudel.powerauth.Login")
+@Label("Login")
+@Category({"PowerAuth", "Login"})
+@Description("Time from starting to log in until logged in, or until the attempt failed")
+@StackTrace(false)
+public class LoginEvent extends Event {
+
+    @Label("Player UUID")
+    String playerId;
+
+    @Label("Player Name")
+    String playerName;
+
+    @Label("Method")
+    @Description("premium, password, ip or register")
+    String method;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -0,0 +1,21 @@
+package com.pawanpoudel.powerauth.tracing;
+
+/**
+ * The steps a login can spend its time in
+ */
+public enum LoginPhase {
+    /** Is this name a premium account? (cache, database, Mojang API) */
+    PREMIUM_CHECK,
+    /** Decrypting the client's shared secret and verify token */
+    ENCRYPTION,
+    /** Mojang session server hasJoined check */
+    SESSION_VERIFY,
+    /** Loading the account row */
+    DB_LOAD,
+    /** Writing the rehashed password and last IP after a successful /login */
+    DB_SAVE,
+    /** Hashing or verifying a password, including the wait for a hash thread */
+    HASH,
+    /** Teleporting into or out of limbo */
+    TELEPORT
+}
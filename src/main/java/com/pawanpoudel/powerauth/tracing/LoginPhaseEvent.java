@@ -0,0 +1,65 @@
+package com.pawanpoudel.powerauth.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * One phase of one player's login. Begun where the phase starts and committed
+ * where it ends, which may be on another thread. Costs next to nothing while
+ * no recording has the event enabled.
+ */
+@Name("com.pawanpoudel.powerauth.LoginPhase")
+@Label("Login Phase")
+@Category({"PowerAuth", "Login"})
+@Description("Time one step of a login took")
+@StackTrace(false)
+public class LoginPhaseEvent extends Event {
+
+    @Label("Player UUID")
+    String playerId;
+
+    @Label("Player Name")
+    String playerName;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    /**
+     * Start timing a phase
+     *
+     * @param uuid may be null before the server knows it (premium check)
+     */
+    public static LoginPhaseEvent start(LoginPhase phase, UUID uuid, String playerName) {
+        LoginPhaseEvent event = new LoginPhaseEvent();
+        event.begin();
+        event.phase = phase.name();
+        event.playerId = uuid != null ? uuid.toString() : null;
+        event.playerName = playerName;
+        return event;
+    }
+
+    public void end(boolean succeeded) {
+        this.succeeded = succeeded;
+        commit();
+    }
+
+    /**
+     * Time an asynchronous phase from the call that starts it until its future completes
+     */
+    public static <T> CompletableFuture<T> trace(LoginPhase phase, UUID uuid, String playerName,
+            Supplier<CompletableFuture<T>> work) {
+        LoginPhaseEvent event = start(phase, uuid, playerName);
+        return work.get().whenComplete((result, error) -> event.end(error == null));
+    }
+}
@@ -0,0 +1,154 @@
+package com.pawanpoudel.powerauth.tracing;
+
+import com.pawanpoudel.powerauth.PowerAuth;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emits a {@link LoginEvent} per login and, when tracing.slow-login-threshold
+ * is set, keeps a rolling flight recording in the background and dumps it to
+ * the recordings folder whenever a login takes longer than the threshold. The
+ * dump holds the slow login's phases next to GC, thread and I/O activity of the
+ * same moment.
+ */
+public class LoginTracer {
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final PowerAuth plugin;
+    private final long thresholdNanos;
+    private final long cooldownNanos;
+    private final AtomicLong lastDump = new AtomicLong();
+    private Recording recording;
+
+    public LoginTracer(PowerAuth plugin) {
+        this.plugin = plugin;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(
+                plugin.getConfig().getLong("tracing.slow-login-threshold", 0));
+        this.cooldownNanos = TimeUnit.SECONDS.toNanos(plugin.getConfig().getLong("tracing.dump-cooldown", 60));
+
+        if (thresholdNanos > 0) {
+            startRecording();
+        }
+    }
+
+    private void startRecording() {
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setName("PowerAuth slow logins");
+            recording.setToDisk(true);
+            recording.setMaxAge(Duration.ofSeconds(plugin.getConfig().getLong("tracing.recording-max-age", 120)));
+            recording.enable(LoginEvent.class).withoutThreshold();
+            recording.enable(LoginPhaseEvent.class).withoutThreshold();
+            recording.start();
+            plugin.getLogger().info("Recording slow logins (over "
+                    + TimeUnit.NANOSECONDS.toMillis(thresholdNanos) + " ms) with Java Flight Recorder.");
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            plugin.getLogger().warning("Could not start the slow login recording: " + e.getMessage());
+            recording = null;
+        }
+    }
+
+    /**
+     * Start timing a login
+     *
+     * @param uuid may be null if the server does not know it yet (premium login start)
+     */
+    public LoginTrace start(UUID uuid, String playerName, String method) {
+        return new LoginTrace(uuid, playerName, method);
+    }
+
+    /**
+     * Finish a login and dump the recording if it was slow
+     */
+    public void finish(LoginTrace trace, String outcome) {
+        if (!trace.finished.compareAndSet(false, true)) {
+            return;
+        }
+        long duration = System.nanoTime() - trace.startNanos;
+
+        LoginEvent event = trace.event;
+        event.end();
+        event.outcome = outcome;
+        if (trace.uuid != null) {
+            event.playerId = trace.uuid.toString();
+        }
+        event.commit();
+
+        if (thresholdNanos > 0 && duration >= thresholdNanos) {
+            dump(trace, duration);
+        }
+    }
+
+    private void dump(LoginTrace trace, long duration) {
+        Recording active = recording;
+        long now = System.nanoTime();
+        long last = lastDump.get();
+        if (active == null || (last != 0 && now - last < cooldownNanos) || !lastDump.compareAndSet(last, now)) {
+            return;
+        }
+
+        String name = trace.playerName != null ? trace.playerName.replaceAll("[^A-Za-z0-9_]", "") : "unknown";
+        File file = new File(new File(plugin.getDataFolder(), "recordings"),
+                "slow-login-" + LocalDateTime.now().format(FILE_TIME) + "-" + name + ".jfr");
+
+        // Copying the recording is disk I/O - never on the thread that finished the login
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                file.getParentFile().mkdirs();
+                active.dump(file.toPath());
+                plugin.getLogger().warning("Slow login: " + trace.playerName + " took "
+                        + TimeUnit.NANOSECONDS.toMillis(duration) + " ms (" + trace.method + "), recording saved to "
+                        + file.getName());
+            } catch (IOException | IllegalStateException e) {
+                plugin.getLogger().warning("Could not save the slow login recording: " + e.getMessage());
+            }
+        });
+    }
+
+    public void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    /**
+     * A login in progress
+     */
+    public static final class LoginTrace {
+        private final LoginEvent event = new LoginEvent();
+        private final long startNanos = System.nanoTime();
+        private final String playerName;
+        private final String method;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile UUID uuid;
+
+        LoginTrace(UUID uuid, String playerName, String method) {
+            event.begin();
+            event.playerName = playerName;
+            event.method = method;
+            this.uuid = uuid;
+            this.playerName = playerName;
+            this.method = method;
+        }
+
+        /**
+         * Set the UUID once it is known, e.g. after the session server answered
+         */
+        public void setUuid(UUID uuid) {
+            this.uuid = uuid;
+        }
+    }
+}
@@ -1,53 +1,110 @@
 package com.pawanpoudel.powerauth.utils;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Discord alerts are queued and posted by one sender thread, so callers never
+ * wait on Discord. Alerts with the same title, account and description that
+ * are still queued are merged into one embed ("37 failed logins from 5 IPs"),
+ * so different reasons each keep their own embed. Up to 10 embeds go out per
+ * message, and rate-limit answers pause the sender instead of losing the
+ * alerts. When the queue is full new alerts are dropped and counted.
+ */
 public class DiscordWebhook {
 
+    // Discord accepts at most 10 embeds per message
+    private static final int MAX_EMBEDS = 10;
+    private static final int MAX_LISTED_IPS = 10;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 5000;
+
+    private final HttpTransport transport;
     private final String webhookUrl;
+    private final int queueSize;
+    private final long batchWindowMillis;
+
+    // Queued alerts in send order, plus an index by coalescing key (guarded by lock)
+    private final Object lock = new Object();
+    private final Deque<Alert> queue = new ArrayDeque<>();
+    private final Map<String, Alert> queued = new HashMap<>();
+    private long nextSendAt;
 
-    public DiscordWebhook(String webhookUrl) {
+    private final Thread sender;
+    private volatile boolean running = true;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    public DiscordWebhook(HttpTransport transport, String webhookUrl) {
+        this(transport, webhookUrl, 100, 2000);
+    }
+
+    /**
+     * @param queueSize         most alerts waiting to be sent before new ones are dropped
+     * @param batchWindowMillis how long the sender waits after the first alert so a burst
+     *                          goes out as one message
+     */
+    public DiscordWebhook(HttpTransport transport, String webhookUrl, int queueSize, long batchWindowMillis) {
+        this.transport = transport;
         this.webhookUrl = webhookUrl;
+        this.queueSize = Math.max(1, queueSize);
+        this.batchWindowMillis = Math.max(0, batchWindowMillis);
+
+        this.sender = new Thread(this::runSender, "PowerAuth-Webhook");
+        sender.setDaemon(true);
+        if (isConfigured()) {
+            sender.start();
+        }
+    }
+
+    private boolean isConfigured() {
+        return webhookUrl != null && !webhookUrl.isEmpty() && !webhookUrl.equals("YOUR_WEBHOOK_URL_HERE");
     }
 
     /**
-     * Send a Discord embed notification
+     * Queue a Discord embed notification
      */
     public void sendEmbed(String title, String description, int color, String username, String ipAddress) {
-        if (webhookUrl == null || webhookUrl.isEmpty() || webhookUrl.equals("YOUR_WEBHOOK_URL_HERE")) {
+        if (!isConfigured() || !running) {
             return; // Webhook not configured
         }
 
-        try {
-            String timestamp = Instant.now().toString();
-
-            String json = String.format(
-                    "{\"embeds\": [{" +
-                            "\"title\": \"%s\"," +
-                            "\"description\": \"%s\"," +
-                            "\"color\": %d," +
-                            "\"fields\": [" +
-                            "{\"name\": \"Username\", \"value\": \"%s\", \"inline\": true}," +
-                            "{\"name\": \"IP Address\", \"value\": \"%s\", \"inline\": true}" +
-                            "]," +
-                            "\"timestamp\": \"%s\"," +
-                            "\"footer\": {\"text\": \"PowerAuth Security\"}" +
-                            "}]}",
-                    escapeJson(title),
-                    escapeJson(description),
-                    color,
-                    escapeJson(username),
-                    escapeJson(ipAddress),
-                    timestamp);
-
-            sendWebhook(json);
-        } catch (Exception e) {
-            // Silently fail - don't crash the plugin if Discord is down
-            System.err.println("Failed to send Discord webhook: " + e.getMessage());
+        // The description carries the reason, which must not be lost in the merge
+        String key = title + '\0' + (username == null ? "" : username.toLowerCase()) + '\0' + description;
+        synchronized (lock) {
+            Alert existing = queued.get(key);
+            if (existing != null) {
+                existing.merge(ipAddress);
+                coalesced.increment();
+                return;
+            }
+            if (queue.size() >= queueSize) {
+                dropped.increment();
+                return;
+            }
+
+            Alert alert = new Alert(key, title, description, color, username, ipAddress);
+            queue.addLast(alert);
+            queued.put(key, alert);
+            lock.notifyAll();
         }
     }
 
@@ -55,11 +112,11 @@ public class DiscordWebhook {
      * Send failed login alert
      */
     public void sendFailedLoginAlert(String username, String ipAddress, String reason, String mentions) {
-        String description = "**Event:** Failed Login Attempt\\n**Reason:** " + reason;
+        String description = "**Event:** Failed Login Attempt\n**Reason:** " + reason;
 
         // Add mentions if provided
         if (mentions != null && !mentions.isEmpty()) {
-            description = mentions + "\\n\\n" + description;
+            description = mentions + "\n\n" + description;
         }
 
         sendEmbed(
@@ -88,38 +145,275 @@ public class DiscordWebhook {
     public void sendPasswordChangeAlert(String username, String changedBy) {
         sendEmbed(
                 "🔄 Password Changed",
-                "**Event:** Password Changed\\n**Changed By:** " + changedBy,
+                "**Event:** Password Changed\n**Changed By:** " + changedBy,
                 0xFFA500, // Orange
                 username,
                 "N/A");
     }
 
-    private void sendWebhook(String json) throws Exception {
-        URL url = new URL(webhookUrl);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("User-Agent", "PowerAuth-Webhook");
-        connection.setDoOutput(true);
+    private void runSender() {
+        while (running) {
+            try {
+                List<Alert> batch = takeBatch();
+                if (batch != null) {
+                    deliver(batch);
+                }
+            } catch (InterruptedException e) {
+                // close() interrupts to stop the sender
+            } catch (RuntimeException e) {
+                System.err.println("Discord webhook sender error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Wait for queued alerts, the batch window and any rate-limit pause, then take
+     * up to {@link #MAX_EMBEDS} alerts
+     */
+    private List<Alert> takeBatch() throws InterruptedException {
+        synchronized (lock) {
+            while (running && queue.isEmpty()) {
+                lock.wait();
+            }
+            if (!running) {
+                return null;
+            }
+
+            long sendAt = Math.max(nextSendAt, queue.peekFirst().queuedAt + batchWindowMillis);
+            long wait = sendAt - System.currentTimeMillis();
+            while (running && wait > 0) {
+                lock.wait(wait);
+                wait = sendAt - System.currentTimeMillis();
+            }
+
+            List<Alert> batch = new ArrayList<>(MAX_EMBEDS);
+            while (batch.size() < MAX_EMBEDS && !queue.isEmpty()) {
+                Alert alert = queue.pollFirst();
+                queued.remove(alert.key);
+                batch.add(alert);
+            }
+            return batch;
+        }
+    }
+
+    private void deliver(List<Alert> batch) throws InterruptedException {
+        HttpTransport.JsonResponse response;
+        try {
+            response = transport.postJson(webhookUrl, toJson(batch)).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.err.println("Failed to send Discord webhook: " + cause.getMessage());
+            retry(batch, RETRY_DELAY_MS, true);
+            return;
+        }
+
+        if (response.getStatusCode() == 429) {
+            rateLimited.increment();
+            // Discord asked us to wait - that is not the alerts' fault, so it does not use up an attempt
+            retry(batch, retryAfterMillis(response), false);
+            return;
+        }
+        if (response.getStatusCode() >= 500) {
+            System.err.println("Failed to send Discord webhook: HTTP " + response.getStatusCode());
+            retry(batch, RETRY_DELAY_MS, true);
+            return;
+        }
+        if (!response.isSuccess()) {
+            // Bad URL, deleted webhook or rejected payload - retrying will not help
+            System.err.println("Failed to send Discord webhook: HTTP " + response.getStatusCode());
+            failed.add(batch.size());
+            return;
+        }
+
+        sent.add(batch.size());
+
+        // Bucket exhausted - wait for it to reset instead of running into a 429
+        if ("0".equals(response.getHeader("X-RateLimit-Remaining"))) {
+            long resetAfter = parseSeconds(response.getHeader("X-RateLimit-Reset-After"));
+            if (resetAfter > 0) {
+                pause(resetAfter);
+            }
+        }
+    }
+
+    /**
+     * Put a batch back at the front of the queue and pause the sender
+     */
+    private void retry(List<Alert> batch, long delayMillis, boolean countAttempt) {
+        synchronized (lock) {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                Alert alert = batch.get(i);
+                if (countAttempt && ++alert.attempts >= MAX_ATTEMPTS) {
+                    failed.increment();
+                    continue;
+                }
 
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = json.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
+                Alert newer = queued.get(alert.key);
+                if (newer != null) {
+                    // The same alert was raised again while this one was in flight
+                    newer.absorb(alert);
+                } else {
+                    queue.addFirst(alert);
+                    queued.put(alert.key, alert);
+                }
+            }
+            pauseLocked(delayMillis);
         }
+    }
+
+    private void pause(long delayMillis) {
+        synchronized (lock) {
+            pauseLocked(delayMillis);
+        }
+    }
+
+    private void pauseLocked(long delayMillis) {
+        nextSendAt = Math.max(nextSendAt, System.currentTimeMillis() + delayMillis);
+    }
 
-        int responseCode = connection.getResponseCode();
-        if (responseCode < 200 || responseCode >= 300) {
-            throw new Exception("HTTP " + responseCode);
+    private static long retryAfterMillis(HttpTransport.JsonResponse response) {
+        long millis = parseSeconds(response.getHeader("Retry-After"));
+        if (millis <= 0 && response.getBody().isJsonObject()) {
+            JsonElement retryAfter = response.getBody().getAsJsonObject().get("retry_after");
+            if (retryAfter != null && retryAfter.isJsonPrimitive()) {
+                millis = (long) Math.ceil(retryAfter.getAsDouble() * 1000);
+            }
         }
+        return millis > 0 ? millis : RETRY_DELAY_MS;
     }
 
-    private String escapeJson(String text) {
-        if (text == null)
-            return "";
-        return text.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    // Discord sends fractional seconds, e.g. "1.337"
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return (long) Math.ceil(Double.parseDouble(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String toJson(List<Alert> batch) {
+        JsonArray embeds = new JsonArray();
+        for (Alert alert : batch) {
+            embeds.add(alert.toEmbed());
+        }
+
+        JsonObject json = new JsonObject();
+        json.add("embeds", embeds);
+        return json.toString();
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    public int getQueued() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Stop the sender; alerts still queued are discarded
+     */
+    public void close() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        sender.interrupt();
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Alert {
+        private final String key;
+        private final String title;
+        private final String description;
+        private final int color;
+        private final String username;
+        private final long queuedAt = System.currentTimeMillis();
+        // Guarded by the webhook lock
+        private final Set<String> ipAddresses = new LinkedHashSet<>();
+        private int count = 1;
+        private int attempts;
+
+        Alert(String key, String title, String description, int color, String username, String ipAddress) {
+            this.key = key;
+            this.title = title;
+            this.description = description;
+            this.color = color;
+            this.username = username;
+            ipAddresses.add(ipAddress == null ? "N/A" : ipAddress);
+        }
+
+        void merge(String ipAddress) {
+            count++;
+            ipAddresses.add(ipAddress == null ? "N/A" : ipAddress);
+        }
+
+        void absorb(Alert older) {
+            count += older.count;
+            ipAddresses.addAll(older.ipAddresses);
+        }
+
+        JsonObject toEmbed() {
+            String text = description;
+            if (count > 1) {
+                text += "\n**Occurrences:** " + count + " from " + ipAddresses.size()
+                        + (ipAddresses.size() == 1 ? " IP" : " IPs");
+            }
+
+            List<String> listed = new ArrayList<>(ipAddresses);
+            String ips = String.join(", ", listed.subList(0, Math.min(listed.size(), MAX_LISTED_IPS)));
+            if (listed.size() > MAX_LISTED_IPS) {
+                ips += " (+" + (listed.size() - MAX_LISTED_IPS) + " more)";
+            }
+
+            JsonArray fields = new JsonArray();
+            fields.add(field("Username", username == null ? "" : username));
+            fields.add(field(ipAddresses.size() == 1 ? "IP Address" : "IP Addresses", ips));
+
+            JsonObject footer = new JsonObject();
+            footer.addProperty("text", "PowerAuth Security");
+
+            JsonObject embed = new JsonObject();
+            embed.addProperty("title", title);
+            embed.addProperty("description", text);
+            embed.addProperty("color", color);
+            embed.add("fields", fields);
+            embed.addProperty("timestamp", Instant.ofEpochMilli(queuedAt).toString());
+            embed.add("footer", footer);
+            return embed;
+        }
+
+        private static JsonObject field(String name, String value) {
+            JsonObject field = new JsonObject();
+            field.addProperty("name", name);
+            field.addProperty("value", value);
+            field.addProperty("inline", true);
+            return field;
+        }
     }
 }
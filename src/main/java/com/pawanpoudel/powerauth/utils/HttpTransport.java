@@ -0,0 +1,127 @@
+package com.pawanpoudel.powerauth.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One HTTP client shared by every outgoing request. Connections are kept alive
+ * (and multiplexed over HTTP/2 where the server supports it), so only the first
+ * request to a host pays for the TLS handshake.
+ */
+public class HttpTransport {
+
+    private static final String USER_AGENT = "PowerAuth";
+
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final Duration requestTimeout;
+
+    public HttpTransport(long connectTimeoutSeconds, long requestTimeoutSeconds) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "PowerAuth-HTTP-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+        this.requestTimeout = Duration.ofSeconds(requestTimeoutSeconds);
+    }
+
+    /**
+     * GET a URL and decode the body as JSON
+     */
+    public CompletableFuture<JsonResponse> getJson(String url) {
+        return send(newRequest(url).GET().build());
+    }
+
+    /**
+     * POST a JSON document and decode the response body as JSON
+     */
+    public CompletableFuture<JsonResponse> postJson(String url, String json) {
+        return send(newRequest(url)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build());
+    }
+
+    private HttpRequest.Builder newRequest(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("User-Agent", USER_AGENT)
+                .header("Accept", "application/json");
+    }
+
+    private CompletableFuture<JsonResponse> send(HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> new JsonResponse(response.statusCode(), response.headers(),
+                        parse(response.body())));
+    }
+
+    // The body is parsed straight off the stream rather than buffered into a String first
+    private static JsonElement parse(InputStream body) {
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(reader);
+        } catch (IOException | JsonParseException e) {
+            // Empty or non-JSON bodies (e.g. an HTML error page) carry nothing we use
+            return JsonNull.INSTANCE;
+        }
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public static final class JsonResponse {
+        private final int statusCode;
+        private final HttpHeaders headers;
+        private final JsonElement body;
+
+        JsonResponse(int statusCode, HttpHeaders headers, JsonElement body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public boolean isSuccess() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+
+        public String getHeader(String name) {
+            return headers.firstValue(name).orElse(null);
+        }
+
+        /**
+         * @return the decoded body, JsonNull if there was none
+         */
+        public JsonElement getBody() {
+            return body;
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package com.pawanpoudel.powerauth.utils;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 
+/**
+ * Legacy unsalted SHA-256 hashing. New hashes are created by
+ * {@link com.pawanpoudel.powerauth.security.PasswordService}; this is only
+ * used to check hashes stored by older versions.
+ */
 public class PasswordUtils {
 
     public static String hash(String password) {
@@ -23,6 +30,11 @@ public class PasswordUtils {
     }
 
     public static boolean check(String password, String hash) {
-        return hash(password).equals(hash);
+        if (hash == null) {
+            return false;
+        }
+        // Constant-time compare so response timing does not leak how much of the hash matched
+        return MessageDigest.isEqual(hash(password).getBytes(StandardCharsets.US_ASCII),
+                hash.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII));
     }
 }
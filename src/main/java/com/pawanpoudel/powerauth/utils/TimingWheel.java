@@ -0,0 +1,147 @@
+package com.pawanpoudel.powerauth.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel for deadlines on many keys.
+ * <p>
+ * Time is cut into ticks and each tick maps to one slot of a fixed ring.
+ * Scheduling and cancelling are O(1); {@link #advance(long, Consumer)} only
+ * visits the slots between the last advance and now, and leaves entries whose
+ * deadline lies more than one turn of the ring ahead where they are.
+ */
+public class TimingWheel<K> {
+
+    private final long tickMillis;
+    private final int mask;
+    private final Entry<K>[] slots;
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+
+    private long currentTick;
+
+    /**
+     * @param wheelSize number of slots, rounded up to a power of two
+     * @param tickMillis length of one tick
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int wheelSize, long tickMillis) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1) << 1);
+        this.tickMillis = Math.max(1, tickMillis);
+        this.mask = size - 1;
+        this.currentTick = System.currentTimeMillis() / this.tickMillis;
+
+        // Each slot is a circular list around a sentinel
+        this.slots = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            Entry<K> sentinel = new Entry<>(null, 0);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            slots[i] = sentinel;
+        }
+    }
+
+    /**
+     * Schedule a key to expire after a delay, replacing any earlier deadline
+     */
+    public synchronized void schedule(K key, long delayMillis) {
+        Entry<K> existing = entries.remove(key);
+        if (existing != null) {
+            unlink(existing);
+        }
+
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        Entry<K> entry = new Entry<>(key, currentTick + ticks);
+        entries.put(key, entry);
+        link(entry);
+    }
+
+    /**
+     * @return true if the key was scheduled
+     */
+    public synchronized boolean cancel(K key) {
+        Entry<K> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Expire every key whose deadline has passed. The callback runs after the
+     * wheel is unlocked, so it may schedule or cancel keys itself.
+     *
+     * @return the number of expired keys
+     */
+    public int advance(long nowMillis, Consumer<K> onExpire) {
+        List<K> expired = new ArrayList<>();
+
+        synchronized (this) {
+            long nowTick = nowMillis / tickMillis;
+            if (nowTick <= currentTick) {
+                return 0;
+            }
+
+            // After a long pause every slot is due once; no need to spin through the same slots again
+            long steps = Math.min(nowTick - currentTick, slots.length);
+            for (long i = 1; i <= steps; i++) {
+                Entry<K> sentinel = slots[(int) ((currentTick + i) & mask)];
+                Entry<K> entry = sentinel.next;
+                while (entry != sentinel) {
+                    Entry<K> next = entry.next;
+                    if (entry.deadlineTick <= nowTick) {
+                        unlink(entry);
+                        entries.remove(entry.key);
+                        expired.add(entry.key);
+                    }
+                    entry = next;
+                }
+            }
+            currentTick = nowTick;
+        }
+
+        for (K key : expired) {
+            onExpire.accept(key);
+        }
+        return expired.size();
+    }
+
+    private void link(Entry<K> entry) {
+        Entry<K> sentinel = slots[(int) (entry.deadlineTick & mask)];
+        entry.prev = sentinel.prev;
+        entry.next = sentinel;
+        sentinel.prev.next = entry;
+        sentinel.prev = entry;
+    }
+
+    private void unlink(Entry<K> entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private static final class Entry<K> {
+        final K key;
+        final long deadlineTick;
+        Entry<K> prev;
+        Entry<K> next;
+
+        Entry(K key, long deadlineTick) {
+            this.key = key;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
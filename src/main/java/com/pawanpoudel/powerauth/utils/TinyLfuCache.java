@@ -0,0 +1,321 @@
+package com.pawanpoudel.powerauth.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded cache with a W-TinyLFU admission policy.
+ * <p>
+ * New entries land in a small LRU window. When the window overflows, its oldest
+ * entry competes with the oldest entry of the main segment and the one that was
+ * accessed more often (according to a count-min sketch) stays. The main segment
+ * is split into probation and protected LRU lists, so entries touched again
+ * after admission survive scans of one-off keys.
+ * <p>
+ * Loaders that read the backing store outside the lock take a {@link #stamp(Object)}
+ * first and store with {@link #putIfUnchanged(Object, Object, long)}, so a row read
+ * before an invalidation is never put back after it.
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int STAMP_STRIPES = 64;
+
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+
+    private final Map<K, Node<K, V>> data = new HashMap<>();
+    private final FrequencySketch sketch;
+    private final Node<K, V>[] heads;
+    // Invalidation counts, striped by key hash
+    private final long[] stamps = new long[STAMP_STRIPES];
+
+    private int windowSize;
+    private int protectedSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(int maximumSize) {
+        this.maximumSize = Math.max(1, maximumSize);
+        this.windowMaximum = Math.max(1, this.maximumSize / 100);
+        this.protectedMaximum = (int) ((this.maximumSize - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(this.maximumSize);
+
+        // Each list is circular around a sentinel; head.next is the most recent entry
+        this.heads = new Node[3];
+        for (int i = 0; i < heads.length; i++) {
+            Node<K, V> sentinel = new Node<>(null, null);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            heads[i] = sentinel;
+        }
+    }
+
+    public synchronized V get(K key) {
+        sketch.increment(key);
+
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        onHit(node);
+        return node.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            node.value = value;
+            onHit(node);
+            return;
+        }
+
+        node = new Node<>(key, value);
+        data.put(key, node);
+        link(WINDOW, node);
+        evict();
+    }
+
+    /**
+     * @return the key's invalidation stamp, to pass to {@link #putIfUnchanged(Object, Object, long)}
+     */
+    public synchronized long stamp(K key) {
+        return stamps[stripe(key)];
+    }
+
+    /**
+     * Store a value loaded after {@link #stamp(Object)} returned the given stamp,
+     * unless the key was invalidated in the meantime
+     *
+     * @return true if the value was stored
+     */
+    public synchronized boolean putIfUnchanged(K key, V value, long stamp) {
+        if (stamps[stripe(key)] != stamp) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    public synchronized void invalidate(K key) {
+        stamps[stripe(key)]++;
+        Node<K, V> node = data.remove(key);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i]++;
+        }
+        for (Node<K, V> node : data.values()) {
+            unlink(node);
+        }
+        data.clear();
+    }
+
+    public synchronized int size() {
+        return data.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    private void onHit(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW:
+                unlink(node);
+                link(WINDOW, node);
+                break;
+            case PROBATION:
+                // Touched again after admission - promote, demoting the oldest protected entry if full
+                unlink(node);
+                link(PROTECTED, node);
+                if (protectedSize > protectedMaximum) {
+                    Node<K, V> demoted = heads[PROTECTED].prev;
+                    unlink(demoted);
+                    link(PROBATION, demoted);
+                }
+                break;
+            case PROTECTED:
+            default:
+                unlink(node);
+                link(PROTECTED, node);
+                break;
+        }
+    }
+
+    private void evict() {
+        // Move window overflow into probation, then make it compete for a place
+        while (windowSize > windowMaximum) {
+            Node<K, V> candidate = heads[WINDOW].prev;
+            unlink(candidate);
+            link(PROBATION, candidate);
+        }
+
+        while (data.size() > maximumSize) {
+            Node<K, V> candidate = heads[PROBATION].next;
+            Node<K, V> victim = heads[PROBATION].prev;
+
+            if (candidate == victim || candidate == heads[PROBATION]) {
+                // Probation holds a single entry (or none); fall back to the oldest protected entry
+                Node<K, V> evicted = candidate != heads[PROBATION] ? candidate : heads[PROTECTED].prev;
+                remove(evicted);
+                continue;
+            }
+
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                remove(victim);
+            } else {
+                remove(candidate);
+            }
+        }
+    }
+
+    private void remove(Node<K, V> node) {
+        data.remove(node.key);
+        unlink(node);
+        evictions.increment();
+    }
+
+    private void link(int segment, Node<K, V> node) {
+        Node<K, V> head = heads[segment];
+        node.segment = segment;
+        if (segment == WINDOW) {
+            windowSize++;
+        } else if (segment == PROTECTED) {
+            protectedSize++;
+        }
+        node.prev = head;
+        node.next = head.next;
+        head.next.prev = node;
+        head.next = node;
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.segment == WINDOW) {
+            windowSize--;
+        } else if (node.segment == PROTECTED) {
+            protectedSize--;
+        }
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        V value;
+        int segment;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, halved periodically so old popularity fades
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int length = Integer.highestOneBit(Math.max(16, maximumSize - 1) << 1);
+            this.table = new long[length];
+            this.tableMask = length - 1;
+            this.sampleSize = 10 * Math.max(16, maximumSize);
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions >>>= 1;
+            }
+        }
+
+        private boolean incrementAt(int index, int counter) {
+            int offset = counter << 2;
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return ((int) h) & tableMask;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.pawanpoudel.powerauth;
+
+import com.pawanpoudel.powerauth.metrics.MetricsRegistry;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * A PowerAuth instance outside a server for unit tests: the managers only read
+ * its config, logger and data folder, and schedule tasks that never run.
+ */
+public final class TestPlugin {
+
+    private TestPlugin() {
+    }
+
+    public static PowerAuth create(File dataFolder, YamlConfiguration config) {
+        BukkitScheduler scheduler = Mockito.mock(BukkitScheduler.class);
+        Server server = Mockito.mock(Server.class);
+        when(server.getScheduler()).thenReturn(scheduler);
+
+        PowerAuth plugin = Mockito.mock(PowerAuth.class);
+        when(plugin.getServer()).thenReturn(server);
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("PowerAuth"));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getMetrics()).thenReturn(new MetricsRegistry());
+        return plugin;
+    }
+}
@@ -0,0 +1,170 @@
+package com.pawanpoudel.powerauth.database;
+
+import com.pawanpoudel.powerauth.TestPlugin;
+import com.pawanpoudel.powerauth.metrics.Counter;
+import com.pawanpoudel.powerauth.metrics.MetricsRegistry;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindBufferTest {
+
+    private static final UUID ALICE = UUID.randomUUID();
+    private static final UUID BOB = UUID.randomUUID();
+
+    @TempDir
+    File dataFolder;
+
+    private Connection connection;
+    private QueryExecutor queryExecutor;
+    private final List<UUID> flushed = new ArrayList<>();
+    private WriteBehindBuffer buffer;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // One in-memory database, kept open for the whole test
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE players (uuid VARCHAR(36) PRIMARY KEY, username VARCHAR(16) NOT NULL, "
+                    + "password_hash VARCHAR(255), is_premium BOOLEAN DEFAULT FALSE, last_ip VARCHAR(45))");
+            statement.execute("INSERT INTO players (uuid, username, last_ip) VALUES ('" + ALICE + "', 'Alice', '1.1.1.1')");
+            statement.execute("INSERT INTO players (uuid, username, last_ip) VALUES ('" + BOB + "', 'Bob', '2.2.2.2')");
+        }
+
+        queryExecutor = new QueryExecutor(new DatabaseConnection() {
+            @Override
+            public Connection getConnection() {
+                return connection;
+            }
+
+            @Override
+            public void releaseConnection(Connection released) {
+            }
+
+            @Override
+            public void initialize() {
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean isValid() {
+                return true;
+            }
+        }, new MetricsRegistry().counter("statements", ""));
+        buffer = new WriteBehindBuffer(queryExecutor, flushed::add);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void coalescesUpdatesPerPlayerLastWriterWins() throws SQLException {
+        buffer.updateIp(ALICE, "3.3.3.3");
+        buffer.setPremium(ALICE, true);
+        buffer.updateIp(ALICE, "4.4.4.4");
+        assertEquals(1, buffer.size());
+
+        buffer.flush();
+
+        AccountSnapshot alice = load(ALICE);
+        assertEquals("4.4.4.4", alice.getLastIp());
+        assertTrue(alice.isPremium());
+        assertEquals(0, buffer.size());
+        assertEquals(List.of(ALICE), flushed);
+    }
+
+    @Test
+    void applyOverlaysPendingValuesUntilFlushed() throws SQLException {
+        buffer.updateIp(BOB, "5.5.5.5");
+
+        assertEquals("5.5.5.5", buffer.apply(load(BOB)).getLastIp());
+        assertEquals("2.2.2.2", load(BOB).getLastIp());
+        assertFalse(buffer.apply(load(BOB)).isPremium());
+
+        buffer.flush();
+        assertEquals("5.5.5.5", load(BOB).getLastIp());
+    }
+
+    @Test
+    void flushWithNothingPendingSendsNoStatements() throws SQLException {
+        Counter statements = new MetricsRegistry().counter("statements", "");
+        WriteBehindBuffer idle = new WriteBehindBuffer(new QueryExecutor(null, statements), flushed::add);
+
+        idle.flush();
+
+        assertEquals(0, statements.get());
+        assertTrue(flushed.isEmpty());
+    }
+
+    @Test
+    void closingTheDatabaseFlushesBufferedUpdates() {
+        YamlConfiguration config = sqliteConfig();
+        UUID uuid = UUID.randomUUID();
+
+        DatabaseManager databaseManager = new DatabaseManager(TestPlugin.create(dataFolder, config));
+        databaseManager.registerPlayer(uuid, "Carol", "hash", "1.1.1.1");
+        databaseManager.updateIp(uuid, "9.9.9.9");
+        databaseManager.close();
+
+        DatabaseManager reopened = new DatabaseManager(TestPlugin.create(dataFolder, config));
+        try {
+            assertEquals("9.9.9.9", reopened.loadAccount(uuid).getLastIp());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void closingWithoutSaveOnShutdownDiscardsBufferedUpdates() {
+        YamlConfiguration config = sqliteConfig();
+        UUID uuid = UUID.randomUUID();
+
+        DatabaseManager databaseManager = new DatabaseManager(TestPlugin.create(dataFolder, config));
+        databaseManager.registerPlayer(uuid, "Dave", "hash", "1.1.1.1");
+        databaseManager.updateIp(uuid, "9.9.9.9");
+        config.set("general.save-on-shutdown", false);
+        databaseManager.close();
+
+        DatabaseManager reopened = new DatabaseManager(TestPlugin.create(dataFolder, config));
+        try {
+            assertEquals("1.1.1.1", reopened.loadAccount(uuid).getLastIp());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static YamlConfiguration sqliteConfig() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", "sqlite");
+        config.set("database.sqlite.file", "test.db");
+        config.set("database.auto-save-interval", 300);
+        return config;
+    }
+
+    private AccountSnapshot load(UUID uuid) throws SQLException {
+        return queryExecutor.queryOne("SELECT username, password_hash, is_premium, last_ip FROM players WHERE uuid = ?",
+                ps -> ps.setString(1, uuid.toString()),
+                rs -> new AccountSnapshot(uuid, rs.getString("username"), rs.getString("password_hash"),
+                        rs.getBoolean("is_premium"), rs.getString("last_ip")));
+    }
+}
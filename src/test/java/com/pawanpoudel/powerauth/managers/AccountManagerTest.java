@@ -0,0 +1,42 @@
+package com.pawanpoudel.powerauth.managers;
+
+import com.pawanpoudel.powerauth.PowerAuth;
+import com.pawanpoudel.powerauth.TestPlugin;
+import com.pawanpoudel.powerauth.database.AccountSnapshot;
+import com.pawanpoudel.powerauth.database.DatabaseManager;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AccountManagerTest {
+
+    @TempDir
+    File dataFolder;
+
+    @Test
+    void loadThatFailsImmediatelyIsForgotten() {
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        PowerAuth plugin = TestPlugin.create(dataFolder, new YamlConfiguration());
+        when(plugin.getDatabaseManager()).thenReturn(databaseManager);
+        UUID uuid = UUID.randomUUID();
+        // What supplyAsync returns when advanced.async-database is off and the query fails
+        when(databaseManager.loadAccountAsync(uuid)).thenAnswer(
+                invocation -> CompletableFuture.failedFuture(new IllegalStateException("database is down")));
+
+        AccountManager accounts = new AccountManager(plugin);
+        CompletableFuture<AccountSnapshot> first = accounts.load(uuid);
+
+        assertTrue(first.isCompletedExceptionally());
+        // The failure was not cached, so the next join queries again
+        assertNotSame(first, accounts.load(uuid));
+    }
+}
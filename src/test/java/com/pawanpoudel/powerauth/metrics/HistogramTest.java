@@ -0,0 +1,69 @@
+package com.pawanpoudel.powerauth.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+
+    private static final long WINDOW = 60_000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final Histogram histogram = new Histogram("test", "", WINDOW, now::get);
+
+    @Test
+    void quantilesAreWithinAnEighthOfTheValue() {
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(millis, TimeUnit.MILLISECONDS);
+        }
+
+        assertWithinAnEighth(50_000, histogram.getQuantileMicros(0.5));
+        assertWithinAnEighth(99_000, histogram.getQuantileMicros(0.99));
+        assertEquals(100_000, histogram.getMaxMicros());
+    }
+
+    @Test
+    void quantilesForgetRecordingsTwoWindowsOld() {
+        for (int i = 0; i < 100; i++) {
+            histogram.record(1, TimeUnit.SECONDS);
+        }
+
+        // One window on, the slow recordings are in the previous window and still count
+        now.addAndGet(WINDOW);
+        histogram.record(1, TimeUnit.MILLISECONDS);
+        assertWithinAnEighth(1_000_000, histogram.getQuantileMicros(0.5));
+
+        // Two windows on, they are gone
+        now.addAndGet(WINDOW);
+        histogram.record(1, TimeUnit.MILLISECONDS);
+        assertWithinAnEighth(1_000, histogram.getQuantileMicros(0.99));
+        assertEquals(1_000, histogram.getMaxMicros());
+    }
+
+    @Test
+    void longIdlePeriodEmptiesBothWindows() {
+        histogram.record(1, TimeUnit.SECONDS);
+
+        now.addAndGet(10 * WINDOW);
+        assertEquals(0, histogram.getQuantileMicros(0.5));
+        assertEquals(0, histogram.getMaxMicros());
+    }
+
+    @Test
+    void countAndSumNeverReset() {
+        histogram.record(2, TimeUnit.MILLISECONDS);
+        now.addAndGet(10 * WINDOW);
+        histogram.record(3, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(5_000, histogram.getSumMicros());
+    }
+
+    private static void assertWithinAnEighth(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 8, "expected about " + expected + " but was " + actual);
+    }
+}
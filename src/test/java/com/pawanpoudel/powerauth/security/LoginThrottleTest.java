@@ -0,0 +1,135 @@
+package com.pawanpoudel.powerauth.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoginThrottleTest {
+
+    private static final long WINDOW = 60_000;
+    private static final String IP = "10.0.0.1";
+
+    // Starts on a window boundary
+    private final AtomicLong now = new AtomicLong(1000 * WINDOW);
+    private final LoginThrottle throttle = new LoginThrottle(1024, WINDOW, 3, 10, now::get);
+
+    @Test
+    void refusesOnceTheAccountLimitIsReached() {
+        UUID uuid = UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(throttle.tryAttempt(uuid, IP) >= 0);
+        }
+
+        assertEquals(-1, throttle.tryAttempt(uuid, IP));
+        assertTrue(throttle.isThrottled(uuid, IP));
+        // Other accounts on the same address are still below the IP limit
+        assertFalse(throttle.isThrottled(UUID.randomUUID(), IP));
+    }
+
+    @Test
+    void refusesOnceTheAddressLimitIsReachedAcrossAccounts() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(throttle.tryAttempt(UUID.randomUUID(), IP) >= 0);
+        }
+
+        assertEquals(-1, throttle.tryAttempt(UUID.randomUUID(), IP));
+        assertFalse(throttle.isThrottled(UUID.randomUUID(), "10.0.0.2"));
+    }
+
+    @Test
+    void refundedAttemptsDoNotCount() {
+        UUID uuid = UUID.randomUUID();
+        for (int i = 0; i < 20; i++) {
+            long attempt = throttle.tryAttempt(uuid, IP);
+            assertTrue(attempt >= 0);
+            throttle.refund(uuid, IP, attempt);
+        }
+
+        assertFalse(throttle.isThrottled(uuid, IP));
+    }
+
+    @Test
+    void refusedAttemptsAreNotCounted() {
+        UUID uuid = UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            throttle.tryAttempt(uuid, IP);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(-1, throttle.tryAttempt(uuid, IP));
+        }
+
+        // Only the three counted failures are fading out, not the refused attempts
+        now.addAndGet(WINDOW + WINDOW / 2);
+        assertFalse(throttle.isThrottled(uuid, IP));
+    }
+
+    @Test
+    void failuresFadeOutOverTheFollowingWindow() {
+        UUID uuid = UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            throttle.tryAttempt(uuid, IP);
+        }
+
+        // Start of the next window: the previous window still counts in full
+        now.addAndGet(WINDOW);
+        assertTrue(throttle.isThrottled(uuid, IP));
+
+        // Halfway: 3 failures weigh as 1.5
+        now.addAndGet(WINDOW / 2);
+        assertFalse(throttle.isThrottled(uuid, IP));
+        assertTrue(throttle.tryAttempt(uuid, IP) >= 0);
+        assertTrue(throttle.tryAttempt(uuid, IP) >= 0);
+        assertEquals(-1, throttle.tryAttempt(uuid, IP));
+
+        // Two windows on, nothing is left
+        now.addAndGet(2 * WINDOW);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(throttle.tryAttempt(uuid, IP) >= 0);
+        }
+    }
+
+    @Test
+    void refundAfterRolloverTakesBackThePreviousWindow() {
+        UUID uuid = UUID.randomUUID();
+        throttle.tryAttempt(uuid, IP);
+        throttle.tryAttempt(uuid, IP);
+        long attempt = throttle.tryAttempt(uuid, IP);
+
+        // The third attempt finished after the window rolled over, and succeeded
+        now.addAndGet(WINDOW);
+        assertTrue(throttle.isThrottled(uuid, IP));
+        throttle.refund(uuid, IP, attempt);
+        assertFalse(throttle.isThrottled(uuid, IP));
+    }
+
+    @Test
+    void onlyTheFirstRefusalOfAWindowIsReported() {
+        UUID uuid = UUID.randomUUID();
+        assertTrue(throttle.claimRefusalReport(uuid));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(throttle.claimRefusalReport(uuid));
+        }
+
+        now.addAndGet(WINDOW);
+        assertTrue(throttle.claimRefusalReport(uuid));
+    }
+
+    @Test
+    void refundOfAnExpiredAttemptChangesNothing() {
+        UUID uuid = UUID.randomUUID();
+        long attempt = throttle.tryAttempt(uuid, IP);
+
+        now.addAndGet(5 * WINDOW);
+        for (int i = 0; i < 3; i++) {
+            throttle.tryAttempt(uuid, IP);
+        }
+        throttle.refund(uuid, IP, attempt);
+
+        assertTrue(throttle.isThrottled(uuid, IP));
+    }
+}
@@ -0,0 +1,82 @@
+package com.pawanpoudel.powerauth.security;
+
+import com.pawanpoudel.powerauth.utils.PasswordUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHasherTest {
+
+    // Minimum costs, the tests check the encoding rather than the strength
+    static List<PasswordHasher> hashers() {
+        return List.of(new Argon2idHasher(1024, 1, 1), new BcryptHasher(4), new Pbkdf2Hasher(1000));
+    }
+
+    @ParameterizedTest
+    @MethodSource("hashers")
+    void hashVerifiesOnlyTheSamePassword(PasswordHasher hasher) {
+        String encoded = hasher.hash("correct horse");
+
+        assertTrue(hasher.matches(encoded));
+        assertTrue(hasher.verify("correct horse", encoded));
+        assertFalse(hasher.verify("correct horse!", encoded));
+        assertFalse(hasher.verify("", encoded));
+    }
+
+    @ParameterizedTest
+    @MethodSource("hashers")
+    void hashesAreSalted(PasswordHasher hasher) {
+        assertNotEquals(hasher.hash("password"), hasher.hash("password"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("hashers")
+    void onlyTheOwningHasherMatches(PasswordHasher hasher) {
+        String encoded = hasher.hash("password");
+
+        for (PasswordHasher other : hashers()) {
+            assertEquals(other.getId().equals(hasher.getId()), other.matches(encoded), other.getId());
+        }
+        assertFalse(new LegacySha256Hasher().matches(encoded));
+    }
+
+    @ParameterizedTest
+    @MethodSource("hashers")
+    void weakerHashesNeedRehash(PasswordHasher hasher) {
+        String encoded = hasher.hash("password");
+
+        assertFalse(hasher.needsRehash(encoded));
+        assertTrue(hasher.stronger().needsRehash(encoded));
+        // A hash made with a higher cost still verifies with the old settings
+        assertTrue(hasher.verify("password", hasher.stronger().hash("password")));
+    }
+
+    @ParameterizedTest
+    @MethodSource("hashers")
+    void malformedHashesNeverVerify(PasswordHasher hasher) {
+        String encoded = hasher.hash("password");
+
+        assertFalse(hasher.verify("password", encoded.substring(0, encoded.length() / 2)));
+    }
+
+    @Test
+    void legacyHashesVerifyAndAlwaysNeedRehash() {
+        LegacySha256Hasher legacy = new LegacySha256Hasher();
+        String encoded = PasswordUtils.hash("password");
+
+        assertTrue(legacy.matches(encoded));
+        assertTrue(legacy.verify("password", encoded));
+        assertFalse(legacy.verify("Password", encoded));
+        assertTrue(legacy.needsRehash(encoded));
+        for (PasswordHasher hasher : hashers()) {
+            assertFalse(hasher.matches(encoded), hasher.getId());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.pawanpoudel.powerauth.security;
+
+import com.pawanpoudel.powerauth.TestPlugin;
+import com.pawanpoudel.powerauth.utils.PasswordUtils;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordServiceTest {
+
+    @TempDir
+    File dataFolder;
+
+    private PasswordService passwordService;
+
+    @BeforeEach
+    void setUp() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("security.password.algorithm", "argon2id");
+        config.set("security.password.argon2.memory-kib", 1024);
+        config.set("security.password.argon2.min-iterations", 1);
+        config.set("security.password.threads", 1);
+        passwordService = new PasswordService(TestPlugin.create(dataFolder, config));
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordService.close();
+    }
+
+    @Test
+    void hashRoundTrip() {
+        UUID player = UUID.randomUUID();
+        String encoded = passwordService.hash(player, "password").join();
+
+        assertTrue(passwordService.verify(player, "password", encoded).join().isMatched());
+        assertFalse(passwordService.verify(player, "wrong", encoded).join().isMatched());
+        assertNull(passwordService.verify(player, "password", encoded).join().getUpgradedHash());
+    }
+
+    @Test
+    void legacyHashIsUpgradedOnMatch() {
+        UUID player = UUID.randomUUID();
+        PasswordService.Verification verification =
+                passwordService.verify(player, "password", PasswordUtils.hash("password")).join();
+
+        assertTrue(verification.isMatched());
+        assertNotNull(verification.getUpgradedHash());
+        assertTrue(verification.getUpgradedHash().startsWith("$argon2id$"));
+        assertTrue(passwordService.verify(player, "password", verification.getUpgradedHash()).join().isMatched());
+    }
+
+    @Test
+    void legacyHashMismatchIsNotUpgraded() {
+        PasswordService.Verification verification =
+                passwordService.verify(UUID.randomUUID(), "wrong", PasswordUtils.hash("password")).join();
+
+        assertFalse(verification.isMatched());
+        assertNull(verification.getUpgradedHash());
+    }
+
+    @Test
+    void secondJobOfTheSamePlayerIsRefusedWhileTheFirstRuns() {
+        UUID player = UUID.randomUUID();
+        CompletableFuture<String> first = passwordService.hash(player, "password");
+        CompletableFuture<String> second = passwordService.hash(player, "password");
+        CompletableFuture<String> other = passwordService.hash(UUID.randomUUID(), "password");
+
+        CompletionException error = assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(PasswordService.AlreadyPendingException.class, error.getCause());
+        assertNotNull(first.join());
+        assertNotNull(other.join());
+
+        // Once the first job is done the player may submit again
+        assertNotNull(passwordService.hash(player, "password").join());
+    }
+}
@@ -0,0 +1,111 @@
+package com.pawanpoudel.powerauth.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private static final long TICK = 100;
+
+    private TimingWheel<String> wheel;
+    private long start;
+    private final List<String> expired = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        wheel = new TimingWheel<>(8, TICK);
+        // Move the wheel to a tick boundary of our own, so deadlines do not depend on when the test started
+        start = (System.currentTimeMillis() / TICK + 10) * TICK;
+        wheel.advance(start, expired::add);
+    }
+
+    @Test
+    void expiresOnceTheDelayHasPassed() {
+        wheel.schedule("a", 3 * TICK);
+
+        assertEquals(0, wheel.advance(start + 2 * TICK, expired::add));
+        assertTrue(wheel.contains("a"));
+
+        assertEquals(1, wheel.advance(start + 3 * TICK, expired::add));
+        assertEquals(List.of("a"), expired);
+        assertFalse(wheel.contains("a"));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledKeysNeverExpire() {
+        wheel.schedule("a", TICK);
+        wheel.schedule("b", TICK);
+
+        assertTrue(wheel.cancel("a"));
+        assertFalse(wheel.cancel("a"));
+
+        wheel.advance(start + 5 * TICK, expired::add);
+        assertEquals(List.of("b"), expired);
+    }
+
+    @Test
+    void schedulingAgainReplacesTheDeadline() {
+        wheel.schedule("a", TICK);
+        wheel.schedule("a", 4 * TICK);
+        assertEquals(1, wheel.size());
+
+        assertEquals(0, wheel.advance(start + 3 * TICK, expired::add));
+        assertEquals(1, wheel.advance(start + 4 * TICK, expired::add));
+    }
+
+    @Test
+    void deadlinesBeyondOneTurnSurviveRollover() {
+        // 20 ticks on an 8-slot wheel: the slot comes round twice before the deadline
+        wheel.schedule("late", 20 * TICK);
+        wheel.schedule("early", 2 * TICK);
+
+        for (long tick = 1; tick < 20; tick++) {
+            wheel.advance(start + tick * TICK, expired::add);
+        }
+        assertEquals(List.of("early"), expired);
+        assertTrue(wheel.contains("late"));
+
+        wheel.advance(start + 20 * TICK, expired::add);
+        assertEquals(List.of("early", "late"), expired);
+    }
+
+    @Test
+    void longPauseExpiresEverythingDue() {
+        for (int i = 1; i <= 30; i++) {
+            wheel.schedule("key" + i, i * TICK);
+        }
+
+        assertEquals(30, wheel.advance(start + 1000 * TICK, expired::add));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advancingBackwardsDoesNothing() {
+        wheel.schedule("a", TICK);
+
+        assertEquals(0, wheel.advance(start - 5 * TICK, expired::add));
+        assertTrue(wheel.contains("a"));
+    }
+
+    @Test
+    void callbackMayRescheduleTheExpiredKey() {
+        wheel.schedule("a", TICK);
+
+        wheel.advance(start + TICK, key -> {
+            expired.add(key);
+            wheel.schedule(key, TICK);
+        });
+        assertTrue(wheel.contains("a"));
+
+        wheel.advance(start + 2 * TICK, expired::add);
+        assertEquals(List.of("a", "a"), expired);
+    }
+}
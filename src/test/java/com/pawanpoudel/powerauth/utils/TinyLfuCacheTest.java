@@ -0,0 +1,121 @@
+package com.pawanpoudel.powerauth.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TinyLfuCacheTest {
+
+    @Test
+    void neverGrowsPastMaximumSize() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "value" + i);
+            assertTrue(cache.size() <= 100);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.getEvictions());
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10);
+        cache.put("a", "1");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void putReplacesExistingValue() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10);
+        cache.put("a", "1");
+        cache.put("a", "2");
+
+        assertEquals("2", cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void frequentKeysSurviveAScanOfOneOffKeys() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        // Regulars: accessed repeatedly, so the sketch rates them above any one-off key
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get(i) == null) {
+                    cache.put(i, "regular" + i);
+                }
+            }
+        }
+
+        for (int i = 1000; i < 11000; i++) {
+            cache.put(i, "scan" + i);
+        }
+
+        int survivors = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get(i) != null) {
+                survivors++;
+            }
+        }
+        assertEquals(50, survivors);
+    }
+
+    @Test
+    void invalidateRemovesEntry() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10);
+        cache.put("a", "1");
+        cache.invalidate("a");
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void clearRemovesEverything() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "value" + i);
+        }
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        cache.put(1, "again");
+        assertNotNull(cache.get(1));
+    }
+
+    @Test
+    void putIfUnchangedStoresWhenNothingWasInvalidated() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10);
+        long stamp = cache.stamp("a");
+
+        assertTrue(cache.putIfUnchanged("a", "loaded", stamp));
+        assertEquals("loaded", cache.get("a"));
+    }
+
+    @Test
+    void putIfUnchangedRejectsValueLoadedBeforeInvalidate() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10);
+        long stamp = cache.stamp("a");
+        // A writer updates the row and invalidates while the loader is still querying
+        cache.invalidate("a");
+
+        assertFalse(cache.putIfUnchanged("a", "stale", stamp));
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void putIfUnchangedRejectsValueLoadedBeforeClear() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10);
+        long stamp = cache.stamp("a");
+        cache.clear();
+
+        assertFalse(cache.putIfUnchanged("a", "stale", stamp));
+    }
+}